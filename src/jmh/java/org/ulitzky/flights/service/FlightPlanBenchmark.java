@@ -0,0 +1,64 @@
+package org.ulitzky.flights.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The API path over the built schedule: filtering the flight plan by the origin and mapping it to the resources.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlightPlanBenchmark {
+
+    @Param({"20"})
+    public int airports;
+
+    @Param({"10"})
+    public int aircrafts;
+
+    @Param({"100", "10000"})
+    public int legs;
+
+    private FlightsService flightsService;
+
+    private FlightsDataMapper dataMapper;
+
+    private List<FlightAssignment> schedule;
+
+    private String origin;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticScheduleGenerator generator = new SyntheticScheduleGenerator(42, airports, aircrafts, legs, 0, true);
+        schedule = generator.getRotations();
+        origin = generator.getAirports()[0].getCode().toLowerCase();
+
+        dataMapper = new FlightsDataMapperImpl();
+        flightsService = new FlightsService();
+        flightsService.setDataMapper(dataMapper);
+        flightsService.setFlightSchedule(schedule);
+    }
+
+    @Benchmark
+    public List<FlightAssignmentResource> getFlightPlanByOrigin() {
+        return flightsService.getFlightPlan(origin);
+    }
+
+    @Benchmark
+    public List<FlightAssignmentResource> getFlightPlan() {
+        return flightsService.getFlightPlan(null);
+    }
+
+    @Benchmark
+    public List<FlightAssignmentResource> mapToFlightPlan() {
+        return dataMapper.mapToFlightPlan(schedule);
+    }
+}
@@ -0,0 +1,69 @@
+package org.ulitzky.flights.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.ulitzky.flights.model.Airport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The basic steps of the search: creating the child state and looking up the duration of the aircraft move.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchStateBenchmark {
+
+    @Param({"20", "200"})
+    public int airports;
+
+    @Param({"10", "100"})
+    public int aircrafts;
+
+    @Param({"1000"})
+    public int legs;
+
+    private FlightScheduleBuildingService service;
+
+    private FlightScheduleBuildingService.FlightScheduleState state;
+
+    private int flightIndex;
+
+    private int aircraftSlot;
+
+    private Airport[] airportList;
+
+    private int pairIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticScheduleGenerator generator = new SyntheticScheduleGenerator(42, airports, aircrafts, legs, 0, true);
+        airportList = generator.getAirports();
+
+        service = new FlightScheduleBuildingService();
+        state = service.new FlightScheduleState(new ScheduleProblem(generator.getFlights()), generator.getHomeBases());
+
+        // The first flight and the aircraft, that can take it
+        flightIndex = 0;
+        Airport origin = state.getFlight(flightIndex).getOrigin();
+        for (int slot = 0; slot < state.getAircraftCount(); slot++) {
+            if (state.getAircraftLocation(slot).getAirport().equals(origin)) {
+                aircraftSlot = slot;
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public FlightScheduleBuildingService.FlightScheduleState buildNewState() {
+        return service.buildNewState(state, flightIndex, aircraftSlot);
+    }
+
+    @Benchmark
+    public int findFlightDuration() {
+        int pair = pairIndex++ % (airportList.length * airportList.length);
+        return state.findFlightDuration(airportList[pair / airportList.length], airportList[pair % airportList.length]);
+    }
+}
@@ -0,0 +1,78 @@
+package org.ulitzky.flights.service;
+
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole search run on the generated network, feasible (with some aircraft moves) and infeasible.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+
+    @Param({"20"})
+    public int airports;
+
+    @Param({"10"})
+    public int aircrafts;
+
+    @Param({"100", "1000"})
+    public int legs;
+
+    @Param({"0.05"})
+    public double moveRatio;
+
+    @Param({"true", "false"})
+    public boolean feasible;
+
+    @Param({"BACKTRACKING", "MATCHING"})
+    public SolverEngine engine;
+
+    @Param({"false"})
+    public boolean minimizeMoves;
+
+    @Param({"EARLIEST"})
+    public FlightOrdering flightOrdering;
+
+    @Param({"LIST", "LEAST_SLACK"})
+    public AircraftOrdering aircraftOrdering;
+
+    private FlightScheduleBuildingService service;
+
+    private List<AircraftLocation> homeBases;
+
+    private List<Flight> flights;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticScheduleGenerator generator = new SyntheticScheduleGenerator(42, airports, aircrafts, legs, moveRatio, feasible);
+        homeBases = generator.getHomeBases();
+        flights = generator.getFlights();
+
+        // The summary of every run is logged, it must not be measured
+        ((Logger) LoggerFactory.getLogger(FlightScheduleBuildingService.class)).setLevel(ch.qos.logback.classic.Level.OFF);
+
+        service = new FlightScheduleBuildingService();
+        service.setEngine(engine);
+        service.setMinimizeMoves(minimizeMoves);
+        service.setFlightOrdering(flightOrdering);
+        service.setAircraftOrdering(aircraftOrdering);
+    }
+
+    @Benchmark
+    public Optional<List<FlightAssignment>> buildFlightAssignments() {
+        return service.buildFlilghtAssignments(homeBases, flights);
+    }
+}
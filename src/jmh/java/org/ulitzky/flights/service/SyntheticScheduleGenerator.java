@@ -0,0 +1,138 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.Aircraft;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates the network of the given size for the benchmarks: the airports, the aircrafts in their home bases and the flights.
+ * The same seed gives the same network.
+ *
+ * The flights are generated as the rotations of the aircrafts, all starting at the beginning of the day, so the network
+ * has the schedule, if it is feasible. Some rotations continue from another airport, than the previous flight arrived to,
+ * after the time to get there - they are only covered with the aircraft moves.
+ * The infeasible network has one more flight at the beginning of the day, than there are aircrafts.
+ */
+class SyntheticScheduleGenerator {
+
+    private static final int DAY_START = (int) (LocalDate.of(2018, 4, 20).atTime(6, 0).toEpochSecond(ZoneOffset.UTC) / 60);
+
+    private static final int MIN_FLIGHT_LENGTH = 30;
+
+    private static final int MAX_FLIGHT_LENGTH = 240;
+
+    private static final int MIN_TURNAROUND = 30;
+
+    private static final int MAX_TURNAROUND = 90;
+
+    private final Random random;
+
+    private final Airport[] airports;
+
+    private final int[][] flightLengths;
+
+    private final List<AircraftLocation> homeBases = new ArrayList<>();
+
+    private final List<Flight> flights = new ArrayList<>();
+
+    private final List<FlightAssignment> rotations = new ArrayList<>();
+
+    /*
+     * @param moveRatio share of the flights, that continue the rotation from another airport
+     */
+    SyntheticScheduleGenerator(final long seed, final int airportsCount, final int aircraftsCount, final int flightsCount,
+                               final double moveRatio, final boolean feasible) {
+        if (airportsCount < 2) {
+            throw new IllegalArgumentException("At least 2 airports are needed, got " + airportsCount);
+        }
+        this.random = new Random(seed);
+
+        airports = new Airport[airportsCount];
+        for (int i = 0; i < airportsCount; i++) {
+            airports[i] = new Airport(airportCode(i));
+        }
+
+        flightLengths = new int[airportsCount][airportsCount];
+        for (int i = 0; i < airportsCount; i++) {
+            for (int j = i + 1; j < airportsCount; j++) {
+                flightLengths[i][j] = MIN_FLIGHT_LENGTH + random.nextInt(MAX_FLIGHT_LENGTH - MIN_FLIGHT_LENGTH + 1);
+                flightLengths[j][i] = flightLengths[i][j];
+            }
+        }
+
+        // Routes, already flown (in any direction), the aircraft can only be moved along them
+        Set<Integer> knownRoutes = new HashSet<>();
+        for (int aircraft = 0; aircraft < aircraftsCount; aircraft++) {
+            Aircraft plane = new Aircraft(String.format("FL-%04d", aircraft + 1), (aircraft % 2 == 0) ? "737" : "A320");
+            int airport = random.nextInt(airportsCount);
+            homeBases.add(new AircraftLocation(plane, airports[airport], AircraftLocation.TIME_NOT_SET));
+
+            int time = DAY_START;
+            int rotationLength = flightsCount / aircraftsCount + ((aircraft < flightsCount % aircraftsCount) ? 1 : 0);
+            for (int leg = 0; leg < rotationLength; leg++) {
+                if (leg > 0 && random.nextDouble() < moveRatio) {
+                    int target = random.nextInt(airportsCount);
+                    if (target != airport && knownRoutes.contains(routeKey(airport, target))) {
+                        time += flightLengths[airport][target];
+                        airport = target;
+                    }
+                }
+
+                int destination = (airport + 1 + random.nextInt(airportsCount - 1)) % airportsCount;
+                Flight flight = new Flight(airports[airport], airports[destination], time, flightLengths[airport][destination]);
+                flights.add(flight);
+                rotations.add(new FlightAssignment(flight, plane));
+                knownRoutes.add(routeKey(airport, destination));
+
+                time = flight.getScheduledArrivalTime() + MIN_TURNAROUND + random.nextInt(MAX_TURNAROUND - MIN_TURNAROUND + 1);
+                airport = destination;
+            }
+        }
+
+        if (!feasible) {
+            int origin = random.nextInt(airportsCount);
+            int destination = (origin + 1) % airportsCount;
+            flights.add(new Flight(airports[origin], airports[destination], DAY_START - 1, flightLengths[origin][destination]));
+        }
+    }
+
+    private static String airportCode(final int index) {
+        return "" + (char) ('A' + index / 676 % 26) + (char) ('A' + index / 26 % 26) + (char) ('A' + index % 26);
+    }
+
+    private int routeKey(final int origin, final int destination) {
+        return Math.min(origin, destination) * airports.length + Math.max(origin, destination);
+    }
+
+    Airport[] getAirports() {
+        return airports;
+    }
+
+    List<AircraftLocation> getHomeBases() {
+        return homeBases;
+    }
+
+    /*
+     * @return the flights in the order of the rotations
+     */
+    List<Flight> getFlights() {
+        return flights;
+    }
+
+    /*
+     * @return the rotations, the flights were generated as, that is a valid schedule, if no aircraft move was needed
+     */
+    List<FlightAssignment> getRotations() {
+        return rotations;
+    }
+}
@@ -1,38 +1,244 @@
 package org.ulitzky.flights.api.v1.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.service.FlightNotFoundException;
+import org.ulitzky.flights.service.FlightPlanPage;
 import org.ulitzky.flights.service.FlightsService;
-import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
-import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
+import org.ulitzky.flights.service.ScheduleNotReadyException;
+import org.ulitzky.flights.service.ScheduleReadModel;
+import org.ulitzky.flights.service.ScheduleRepairException;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
  * Created by lulitzky on 19.04.18.
+ *
+ * The responses only change, when the schedule is rebuilt. So they are serialized once per schedule version and
+ * returned as the bytes, with the strong ETag of the version. The conditional requests with the same ETag get 304 Not Modified.
+ * Until the first schedule is built, the requests get 503 Service Unavailable with the Retry-After header.
+ * The flights, that the partial schedule does not cover, are listed by /flightplan/uncovered.
+ * The flight plan of the departure time range is returned page by page, with the cursor of the next page in the X-Next-Cursor header.
+ * The operations plans of many aircrafts are streamed by /operationsplans in one response.
+ *
+ * The flights are added, cancelled and retimed by POST, DELETE and PATCH on /flights.
+ * The departure times (also "from" and "to" of /flightplan) are given as "HH:mm" of today or as "yyyy-MM-dd HH:mm", the duration as "HH:mm".
+ * The schedule is repaired then and the new version is returned as the ETag, the flights, that cannot be covered, get 409 Conflict.
  */
 @RestController
 @RequestMapping(value = "")
 @Slf4j
 public class FlightsApiController {
 
+    private static final byte[] EMPTY_LIST = "[]".getBytes(StandardCharsets.UTF_8);
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final String ALL_REGISTRATIONS = "all";
+
     @Autowired
     private FlightsService flightsService;
 
-    @RequestMapping(method = RequestMethod.GET, value = "/flightplan")
-    public List<FlightAssignmentResource> getFlightPlan(@RequestParam(name = "airport", required=false)String origin) {
-        log.info("Getting flightplan for origin airport {}", origin);
-        return flightsService.getFlightPlan(origin);
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${api.retry-after-seconds:10}")
+    private int retryAfterSeconds = 10;
+
+    /*
+     * The flight plan, optionally only of the given origin airport. With the departure time range ("from" inclusive, "to" exclusive)
+     * or the page size ("limit") given, the flights are sorted by the departure time and returned page by page:
+     * the cursor of the next page is returned in the X-Next-Cursor header, if there are more flights.
+     * These responses are not kept with the schedule, as the number of the ranges is not bounded. Their ETag carries the resolved
+     * departure time range as well, as the times without the date ("HH:mm") resolve to another range on the next day.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/flightplan", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<byte[]> getFlightPlan(@RequestParam(name = "airport", required=false)String origin,
+                                                @RequestParam(name = "from", required = false) String from,
+                                                @RequestParam(name = "to", required = false) String to,
+                                                @RequestParam(name = "cursor", required = false) String cursor,
+                                                @RequestParam(name = "limit", required = false) Integer limit,
+                                                final WebRequest webRequest) {
+        log.info("Getting flightplan for origin airport {} from {} to {}", origin, from, to);
+        ScheduleReadModel schedule = flightsService.getReadModel();
+        if (from != null || to != null || cursor != null || limit != null) {
+            int fromTime = (from == null) ? Integer.MIN_VALUE : Flight.parseDepartureTime(from);
+            int toTime = (to == null) ? Integer.MAX_VALUE : Flight.parseDepartureTime(to);
+            FlightPlanPage page = schedule.getFlightPlanPage(origin, fromTime, toTime, cursor, (limit == null) ? Integer.MAX_VALUE : limit);
+            if (webRequest.checkNotModified(eTag(schedule, fromTime, toTime))) {
+                return null;
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8);
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getFlights().isEmpty() ? EMPTY_LIST : serialize(page.getFlights()));
+        }
+
+        if (webRequest.checkNotModified(eTag(schedule))) {
+            return null;
+        }
+        if (origin == null) {
+            return jsonResponse(schedule, "flightplan", schedule.getFlightPlan());
+        }
+        return jsonResponse(schedule, "flightplan:" + ScheduleReadModel.normalizeAirportCode(origin), schedule.getFlightPlan(origin));
     }
 
-    @RequestMapping(method = RequestMethod.GET, value = "/operationsplan")
-    public List<OperatingInstructionResource> getOperationsPlan(@RequestParam(name = "registration", required=true)String registration){
+    /*
+     * The flights, that the partial schedule leaves uncovered, without the equipment
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/flightplan/uncovered", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<byte[]> getUncoveredFlights(final WebRequest webRequest) {
+        log.info("Getting uncovered flights");
+        ScheduleReadModel schedule = flightsService.getReadModel();
+        if (webRequest.checkNotModified(eTag(schedule))) {
+            return null;
+        }
+
+        return jsonResponse(schedule, "uncovered", schedule.getUncoveredFlightPlan());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/operationsplan", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<byte[]> getOperationsPlan(@RequestParam(name = "registration", required=true)String registration, final WebRequest webRequest){
         log.info("Getting operations plan by registration {}", registration);
-        return flightsService.getOperationsPlan(registration);
+        ScheduleReadModel schedule = flightsService.getReadModel();
+        if (webRequest.checkNotModified(eTag(schedule))) {
+            return null;
+        }
+
+        return jsonResponse(schedule, "operationsplan:" + registration, schedule.getOperationsPlan(registration));
     }
 
+    /*
+     * The operations plans of many aircrafts at once, as the JSON object by the registration, for "all" of the whole airfleet.
+     * The plans are written to the response one by one, straight from the schedule, that was current at the request,
+     * the unknown registrations get the empty plan, as by /operationsplan.
+     */
+    @RequestMapping(method = RequestMethod.GET, value = "/operationsplans", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<StreamingResponseBody> getOperationsPlans(@RequestParam(name = "registrations") List<String> registrations,
+                                                                    final WebRequest webRequest) {
+        log.info("Getting operations plans of {} registrations", registrations.size());
+        ScheduleReadModel schedule = flightsService.getReadModel();
+        if (webRequest.checkNotModified(eTag(schedule))) {
+            return null;
+        }
+
+        Collection<String> selected = (registrations.size() == 1 && ALL_REGISTRATIONS.equalsIgnoreCase(registrations.get(0)))
+                                      ? schedule.getRegistrations() : new LinkedHashSet<>(registrations);
+        StreamingResponseBody body = outputStream -> {
+            // The response stream is closed by the container, the generator only releases its buffers
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)
+                                                       .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+                generator.writeStartObject();
+                for (String registration : selected) {
+                    generator.writeFieldName(registration);
+                    generator.writeObject(schedule.getOperationsPlan(registration));
+                }
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/flights")
+    public ResponseEntity<Void> addFlight(@RequestParam(name = "origin") String origin, @RequestParam(name = "destination") String destination,
+                                          @RequestParam(name = "departure") String departure, @RequestParam(name = "duration") String duration) {
+        log.info("Adding flight from {} to {} at {}", origin, destination, departure);
+        Flight flight = new Flight(new Airport(origin), new Airport(destination), Flight.parseDepartureTime(departure), Flight.parseFlightLength(duration));
+        return repairedResponse(flightsService.addFlight(flight));
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, value = "/flights")
+    public ResponseEntity<Void> cancelFlight(@RequestParam(name = "origin") String origin, @RequestParam(name = "destination") String destination,
+                                             @RequestParam(name = "departure") String departure) {
+        log.info("Cancelling flight from {} to {} at {}", origin, destination, departure);
+        return repairedResponse(flightsService.cancelFlight(origin, destination, Flight.parseDepartureTime(departure)));
+    }
+
+    @RequestMapping(method = RequestMethod.PATCH, value = "/flights")
+    public ResponseEntity<Void> retimeFlight(@RequestParam(name = "origin") String origin, @RequestParam(name = "destination") String destination,
+                                             @RequestParam(name = "departure") String departure, @RequestParam(name = "newDeparture") String newDeparture) {
+        log.info("Retiming flight from {} to {} at {} to {}", origin, destination, departure, newDeparture);
+        return repairedResponse(flightsService.retimeFlight(origin, destination, Flight.parseDepartureTime(departure), Flight.parseDepartureTime(newDeparture)));
+    }
+
+    private static ResponseEntity<Void> repairedResponse(final long version) {
+        return ResponseEntity.noContent().eTag("\"" + version + "\"").build();
+    }
+
+    @ExceptionHandler(FlightNotFoundException.class)
+    public ResponseEntity<String> handleFlightNotFound(final FlightNotFoundException e) {
+        return textResponse(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+
+    @ExceptionHandler(ScheduleRepairException.class)
+    public ResponseEntity<String> handleScheduleRepair(final ScheduleRepairException e) {
+        return textResponse(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(final IllegalArgumentException e) {
+        return textResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    private static ResponseEntity<String> textResponse(final HttpStatus status, final String message) {
+        return ResponseEntity.status(status).contentType(MediaType.TEXT_PLAIN).body(message);
+    }
+
+    @ExceptionHandler(ScheduleNotReadyException.class)
+    public ResponseEntity<String> handleScheduleNotReady(final ScheduleNotReadyException e) {
+        log.info("Rejecting the request, {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                             .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                             .contentType(MediaType.TEXT_PLAIN)
+                             .body(e.getMessage());
+    }
+
+    private static String eTag(final ScheduleReadModel schedule) {
+        return "\"" + schedule.getVersion() + "\"";
+    }
+
+    private static String eTag(final ScheduleReadModel schedule, final int fromTime, final int toTime) {
+        return "\"" + schedule.getVersion() + ":" + fromTime + "-" + toTime + "\"";
+    }
+
+    /*
+     * The empty lists are not cached by their keys, so the unknown airports and registrations do not fill up the cache
+     */
+    private ResponseEntity<byte[]> jsonResponse(final ScheduleReadModel schedule, final String key, final List<?> body) {
+        byte[] json = body.isEmpty() ? EMPTY_LIST : schedule.getSerializedResponse(key, () -> serialize(body));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(json);
+    }
+
+    private byte[] serialize(final Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize the response", e);
+        }
+    }
+
+    void setRetryAfterSeconds(final int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
 }
@@ -0,0 +1,122 @@
+package org.ulitzky.flights.api.v1.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.ulitzky.flights.api.v1.resource.FlightResource;
+import org.ulitzky.flights.api.v1.resource.HomeBaseResource;
+import org.ulitzky.flights.api.v1.resource.ScenarioRequestResource;
+import org.ulitzky.flights.api.v1.resource.ScenarioResource;
+import org.ulitzky.flights.model.Aircraft;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.service.ScenarioJob;
+import org.ulitzky.flights.service.ScenarioNotFoundException;
+import org.ulitzky.flights.service.ScenarioRejectedException;
+import org.ulitzky.flights.service.ScenarioService;
+import org.ulitzky.flights.service.ScheduleReadModel;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The what-if scenarios are submitted by POST on /scenarios with their own home bases and flights, and solved in the background.
+ * The submit answers 202 Accepted with the job and its location, that is polled by GET until the job is SOLVED, FAILED or TIMED_OUT.
+ * When the queue is full, the submit gets 429 Too Many Requests, while the service is shutting down 503 Service Unavailable,
+ * both with the Retry-After header.
+ */
+@RestController
+@RequestMapping(value = "")
+@Slf4j
+public class ScenariosApiController {
+
+    @Autowired
+    private ScenarioService scenarioService;
+
+    @Value("${api.retry-after-seconds:10}")
+    private int retryAfterSeconds = 10;
+
+    @RequestMapping(method = RequestMethod.POST, value = "/scenarios", consumes = MediaType.APPLICATION_JSON_VALUE,
+                    produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<ScenarioResource> submitScenario(@RequestBody final ScenarioRequestResource scenario) {
+        log.info("Submitting scenario of {} home bases and {} flights", scenario.getHomeBases().size(), scenario.getFlights().size());
+        List<AircraftLocation> homeBases = new ArrayList<>();
+        for (HomeBaseResource homeBase : scenario.getHomeBases()) {
+            homeBases.add(new AircraftLocation(new Aircraft(required(homeBase.getRegistration(), "registration"), required(homeBase.getModel(), "model")),
+                                               new Airport(required(homeBase.getAirport(), "airport")), AircraftLocation.TIME_NOT_SET));
+        }
+        List<Flight> flights = new ArrayList<>();
+        for (FlightResource flight : scenario.getFlights()) {
+            flights.add(new Flight(new Airport(required(flight.getOrigin(), "origin")), new Airport(required(flight.getDestination(), "destination")),
+                                   Flight.parseDepartureTime(required(flight.getDeparture(), "departure")),
+                                   Flight.parseFlightLength(required(flight.getDuration(), "duration"))));
+        }
+
+        ScenarioJob job = scenarioService.submit(homeBases, flights);
+        return ResponseEntity.accepted().location(URI.create("/scenarios/" + job.getId())).body(mapToResource(job));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/scenarios/{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ScenarioResource getScenario(@PathVariable("id") final String id) {
+        return mapToResource(scenarioService.getJob(id));
+    }
+
+    private static String required(final String value, final String name) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static ScenarioResource mapToResource(final ScenarioJob job) {
+        ScenarioResource result = new ScenarioResource();
+        result.setId(job.getId());
+        result.setStatus(job.getStatus().name());
+        result.setWaitMillis(job.getWaitMillis(System.currentTimeMillis()));
+        if (job.getSolveMillis() >= 0) {
+            result.setSolveMillis(job.getSolveMillis());
+        }
+        ScheduleReadModel schedule = job.getSchedule();
+        if (schedule != null) {
+            result.setFlightPlan(schedule.getFlightPlan());
+            result.setUncoveredFlights(schedule.getUncoveredFlightPlan());
+        }
+        result.setError(job.getError());
+        return result;
+    }
+
+    @ExceptionHandler(ScenarioNotFoundException.class)
+    public ResponseEntity<String> handleScenarioNotFound(final ScenarioNotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(final IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    @ExceptionHandler(ScenarioRejectedException.class)
+    public ResponseEntity<String> handleScenarioRejected(final ScenarioRejectedException e) {
+        log.info("Rejecting the scenario, {}", e.getMessage());
+        return ResponseEntity.status(e.isShuttingDown() ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS)
+                             .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                             .contentType(MediaType.TEXT_PLAIN)
+                             .body(e.getMessage());
+    }
+
+    void setRetryAfterSeconds(final int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,43 @@
+package org.ulitzky.flights.api.v1.resource;
+
+/**
+ * The flight to cover, as in the flights input: the departure as "HH:mm" or "yyyy-MM-dd HH:mm", the duration as "HH:mm"
+ */
+public class FlightResource {
+    private String origin;
+    private String destination;
+    private String departure;
+    private String duration;
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(final String origin) {
+        this.origin = origin;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public void setDestination(final String destination) {
+        this.destination = destination;
+    }
+
+    public String getDeparture() {
+        return departure;
+    }
+
+    public void setDeparture(final String departure) {
+        this.departure = departure;
+    }
+
+    public String getDuration() {
+        return duration;
+    }
+
+    public void setDuration(final String duration) {
+        this.duration = duration;
+    }
+}
@@ -0,0 +1,34 @@
+package org.ulitzky.flights.api.v1.resource;
+
+/**
+ * The aircraft and the airport it starts from, as in the home bases input
+ */
+public class HomeBaseResource {
+    private String registration;
+    private String model;
+    private String airport;
+
+    public String getRegistration() {
+        return registration;
+    }
+
+    public void setRegistration(final String registration) {
+        this.registration = registration;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(final String model) {
+        this.model = model;
+    }
+
+    public String getAirport() {
+        return airport;
+    }
+
+    public void setAirport(final String airport) {
+        this.airport = airport;
+    }
+}
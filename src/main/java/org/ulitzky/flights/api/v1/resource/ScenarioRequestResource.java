@@ -0,0 +1,28 @@
+package org.ulitzky.flights.api.v1.resource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The what-if scenario to schedule: its own airfleet and flights, instead of the input files of the service
+ */
+public class ScenarioRequestResource {
+    private List<HomeBaseResource> homeBases = new ArrayList<>();
+    private List<FlightResource> flights = new ArrayList<>();
+
+    public List<HomeBaseResource> getHomeBases() {
+        return homeBases;
+    }
+
+    public void setHomeBases(final List<HomeBaseResource> homeBases) {
+        this.homeBases = homeBases;
+    }
+
+    public List<FlightResource> getFlights() {
+        return flights;
+    }
+
+    public void setFlights(final List<FlightResource> flights) {
+        this.flights = flights;
+    }
+}
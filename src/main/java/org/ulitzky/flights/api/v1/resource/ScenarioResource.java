@@ -0,0 +1,75 @@
+package org.ulitzky.flights.api.v1.resource;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * The state of the submitted scenario, with its flight plan, once it is solved
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScenarioResource {
+    private String id;
+    private String status;
+    private Long waitMillis;
+    private Long solveMillis;
+    private List<FlightAssignmentResource> flightPlan;
+    private List<FlightAssignmentResource> uncoveredFlights;
+    private String error;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(final String status) {
+        this.status = status;
+    }
+
+    public Long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public void setWaitMillis(final Long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    public Long getSolveMillis() {
+        return solveMillis;
+    }
+
+    public void setSolveMillis(final Long solveMillis) {
+        this.solveMillis = solveMillis;
+    }
+
+    public List<FlightAssignmentResource> getFlightPlan() {
+        return flightPlan;
+    }
+
+    public void setFlightPlan(final List<FlightAssignmentResource> flightPlan) {
+        this.flightPlan = flightPlan;
+    }
+
+    public List<FlightAssignmentResource> getUncoveredFlights() {
+        return uncoveredFlights;
+    }
+
+    public void setUncoveredFlights(final List<FlightAssignmentResource> uncoveredFlights) {
+        this.uncoveredFlights = uncoveredFlights;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+}
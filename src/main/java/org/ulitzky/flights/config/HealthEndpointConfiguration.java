@@ -0,0 +1,29 @@
+package org.ulitzky.flights.config;
+
+import org.springframework.boot.actuate.autoconfigure.HealthMvcEndpointProperties;
+import org.springframework.boot.actuate.autoconfigure.ManagementServerProperties;
+import org.springframework.boot.actuate.condition.ConditionalOnEnabledEndpoint;
+import org.springframework.boot.actuate.endpoint.HealthEndpoint;
+import org.springframework.boot.actuate.endpoint.mvc.HealthMvcEndpoint;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Shows the details of the health endpoint (see ScheduleHealthIndicator) to the orchestrators without the authentication.
+ * Only the health endpoint is opened this way, the other actuator endpoints stay secured by the management security.
+ * Otherwise the endpoint is created as by Spring Boot: only if it is enabled, with the "endpoints.health.mapping.*" status mapping.
+ */
+@Configuration
+public class HealthEndpointConfiguration {
+
+    @Bean
+    @ConditionalOnEnabledEndpoint("health")
+    public HealthMvcEndpoint healthMvcEndpoint(final HealthEndpoint healthEndpoint, final ManagementServerProperties managementServerProperties,
+                                               final HealthMvcEndpointProperties healthMvcEndpointProperties) {
+        HealthMvcEndpoint result = new HealthMvcEndpoint(healthEndpoint, false, managementServerProperties.getSecurity().getRoles());
+        if (healthMvcEndpointProperties.getMapping() != null) {
+            result.addStatusMapping(healthMvcEndpointProperties.getMapping());
+        }
+        return result;
+    }
+}
@@ -3,22 +3,28 @@ package org.ulitzky.flights.model;
 import org.apache.commons.csv.CSVRecord;
 
 import javax.validation.constraints.NotNull;
-import java.util.Date;
 
 /**
  * Created by lulitzky on 19.04.18.
+ *
+ * The time the aircraft is ready at the airport is kept as minutes since the epoch.
  */
 public class AircraftLocation {
 
+    /*
+     * The time of the aircraft, that is in its home base and was not scheduled yet
+     */
+    public static final int TIME_NOT_SET = Integer.MIN_VALUE;
+
     @NotNull
     private Aircraft aircraft;
 
     @NotNull
     private Airport airport;
 
-    private Date time;
+    private int time = TIME_NOT_SET;
 
-    public AircraftLocation(final Aircraft aircraft, final Airport airport, final Date time) {
+    public AircraftLocation(final Aircraft aircraft, final Airport airport, final int time) {
         this.aircraft = aircraft;
         this.airport = airport;
         this.time = time;
@@ -51,20 +57,24 @@ public class AircraftLocation {
         this.airport = airport;
     }
 
-    public Date getTime() {
+    public int getTime() {
         return time;
     }
 
-    public void setTime(final Date time) {
+    public void setTime(final int time) {
         this.time = time;
     }
 
+    public boolean hasTime() {
+        return time != TIME_NOT_SET;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(aircraft).append(" at ").append(airport);
-        if (time != null) {
-            sb.append(" ").append(time);
+        if (hasTime()) {
+            sb.append(" ").append(Flight.formatTime(time));
         }
 
         return sb.toString();
@@ -3,14 +3,28 @@ package org.ulitzky.flights.model;
 import org.apache.commons.csv.CSVRecord;
 
 import javax.validation.constraints.NotNull;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by lulitzky on 19.04.18.
+ *
+ * The departure and arrival times are kept as the minutes since the epoch, so comparing them does not allocate anything.
  */
 public class Flight {
 
+    /*
+     * Length of the date part of the dated time "yyyy-MM-dd HH:mm"
+     */
+    private static final int DATE_LENGTH = 10;
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
     @NotNull
     private final Airport origin;
 
@@ -18,20 +32,23 @@ public class Flight {
     private final Airport destination;
 
     @NotNull
-    private final  Date departureTime;
+    private final int departureTime;
 
     @NotNull
     private final int flightLength;
 
-    public Flight(final Airport origin, final Airport destination, final Date departureTime, final int flightLength) {
+    private final int scheduledArrivalTime;
+
+    public Flight(final Airport origin, final Airport destination, final int departureTime, final int flightLength) {
         this.origin = origin;
         this.destination = destination;
         this.departureTime = departureTime;
         this.flightLength = flightLength;
+        this.scheduledArrivalTime = departureTime + flightLength;
     }
 
     public Flight(final CSVRecord record) {
-        // sample format : 10:00,TXL,MUC,01:00
+        // sample format : 10:00,TXL,MUC,01:00 or 2018-04-20 10:00,TXL,MUC,01:00
 
         if (record.size() < 4) {
             throw new IllegalArgumentException("Invalid aircraft location record " + record);
@@ -45,24 +62,39 @@ public class Flight {
 
         this.flightLength = parseFlightLength(record.get(3));
 
+        this.scheduledArrivalTime = departureTime + flightLength;
     }
 
-    static Date parseDepartureTime(final String time) {
-        validateTimeInput(time);
-        int hours = Integer.valueOf(time.substring(0, 2));
-        int minutes =  Integer.valueOf(time.substring(3, 5));
+    /*
+     * @return the given time as minutes since the epoch. The time is given as "yyyy-MM-dd HH:mm" or as "HH:mm" of today.
+     */
+    public static int parseDepartureTime(final String time) {
+        LocalDate date = LocalDate.now();
+        String timeOfDay = time;
+        if (time.length() == DATE_LENGTH + 6 && time.charAt(DATE_LENGTH) == ' ') {
+            try {
+                date = LocalDate.parse(time.substring(0, DATE_LENGTH));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid date format " + time, e);
+            }
+            timeOfDay = time.substring(DATE_LENGTH + 1);
+        }
 
-        Calendar cal = Calendar.getInstance();
+        validateTimeInput(timeOfDay);
+        int hours = Integer.valueOf(timeOfDay.substring(0, 2));
+        int minutes =  Integer.valueOf(timeOfDay.substring(3, 5));
 
-        cal.set(Calendar.HOUR_OF_DAY, hours);
-        cal.set(Calendar.MINUTE, minutes);
-        cal.set(Calendar.SECOND, 0);
-        cal.set(Calendar.MILLISECOND, 0);
+        long epochSecond;
+        try {
+            epochSecond = date.atTime(hours, minutes).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid time " + time, e);
+        }
 
-        return cal.getTime();
+        return (int) TimeUnit.SECONDS.toMinutes(epochSecond);
     }
 
-    static int parseFlightLength(final String time) {
+    public static int parseFlightLength(final String time) {
         validateTimeInput(time);
         int hours = Integer.valueOf(time.substring(0, 2));
         int minutes =  Integer.valueOf(time.substring(3, 5));
@@ -84,7 +116,10 @@ public class Flight {
         return destination;
     }
 
-    public Date getDepartureTime() {
+    /*
+     * @return departure time, as minutes since the epoch
+     */
+    public int getDepartureTime() {
         return departureTime;
     }
 
@@ -92,17 +127,24 @@ public class Flight {
         return flightLength;
     }
 
-    public Date getScheduledArrivalTime() {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(departureTime);
-        cal.add(Calendar.MINUTE, flightLength);
-        return cal.getTime();
+    /*
+     * @return arrival time, as minutes since the epoch
+     */
+    public int getScheduledArrivalTime() {
+        return scheduledArrivalTime;
+    }
+
+    /*
+     * @return the time, given as minutes since the epoch, in human readable form
+     */
+    public static String formatTime(final int time) {
+        return TIME_FORMATTER.format(Instant.ofEpochSecond(TimeUnit.MINUTES.toSeconds(time)));
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(origin).append(" to ").append(destination).append(" at ").append(departureTime).append("; length: ").append(flightLength);
+        sb.append(origin).append(" to ").append(destination).append(" at ").append(formatTime(departureTime)).append("; length: ").append(flightLength);
         return sb.toString();
     }
 }
@@ -12,9 +12,19 @@ public class FlightAssignment {
 
     private Aircraft aircraft;
 
+    /*
+     * Whether the flight is the additional one, moving the free aircraft to the origin of the next flight
+     */
+    private final boolean move;
+
     public FlightAssignment(final Flight flight, final Aircraft aircraft) {
+        this(flight, aircraft, false);
+    }
+
+    public FlightAssignment(final Flight flight, final Aircraft aircraft, final boolean move) {
         this.flight = flight;
         this.aircraft = aircraft;
+        this.move = move;
     }
 
     public Flight getFlight() {
@@ -29,6 +39,10 @@ public class FlightAssignment {
         this.aircraft = aircraft;
     }
 
+    public boolean isMove() {
+        return move;
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,23 @@
+package org.ulitzky.flights.service;
+
+/**
+ * The order, in which the schedule search tries the aircrafts for the flight (property "solver.aircraft-ordering").
+ * The aircrafts, that are already at the origin, are always tried before the moved ones.
+ */
+public enum AircraftOrdering {
+
+    /*
+     * The order of the home bases
+     */
+    LIST,
+
+    /*
+     * The aircraft, that waits the shortest time for the flight, first: the aircrafts, that are ready earlier, are kept for the other flights
+     */
+    LEAST_SLACK,
+
+    /*
+     * The aircraft, that led to the dead end with the flight the least often so far in the search run, first (see AssignmentHistory)
+     */
+    HISTORY
+}
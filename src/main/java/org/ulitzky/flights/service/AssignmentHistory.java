@@ -0,0 +1,28 @@
+package org.ulitzky.flights.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Counts, how often the assignment of the flight to the aircraft led to the dead end (the subtree without the solution)
+ * within one search run, so the search can try the assignments, that succeeded more often, first.
+ * It is shared by the parallel search tasks of the run.
+ */
+class AssignmentHistory {
+
+    private final int aircraftCount;
+
+    private final AtomicIntegerArray failures;
+
+    AssignmentHistory(final int flightsCount, final int aircraftCount) {
+        this.aircraftCount = aircraftCount;
+        this.failures = new AtomicIntegerArray(flightsCount * aircraftCount);
+    }
+
+    void countFailure(final int flightIndex, final int aircraftSlot) {
+        failures.incrementAndGet(flightIndex * aircraftCount + aircraftSlot);
+    }
+
+    int getFailures(final int flightIndex, final int aircraftSlot) {
+        return failures.get(flightIndex * aircraftCount + aircraftSlot);
+    }
+}
@@ -0,0 +1,80 @@
+package org.ulitzky.flights.service;
+
+import java.util.*;
+
+/**
+ * Immutable singly linked list, sharing its tail with the list it was created from.
+ * Adding the element is O(1) and does not copy anything, so many search states can share the common history.
+ *
+ * The iteration order is from the last added element to the first one.
+ */
+final class ConsList<T> implements Iterable<T> {
+
+    private static final ConsList<?> EMPTY = new ConsList<>(null, null, 0);
+
+    private final T head;
+
+    private final ConsList<T> tail;
+
+    private final int size;
+
+    private ConsList(final T head, final ConsList<T> tail, final int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> ConsList<T> empty() {
+        return (ConsList<T>) EMPTY;
+    }
+
+    /*
+     * @return new list, having the given element added to this list
+     */
+    ConsList<T> prepend(final T element) {
+        return new ConsList<>(element, this, size + 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /*
+     * @return the elements in the order they were added
+     */
+    List<T> toList() {
+        ArrayList<T> result = new ArrayList<>(size);
+        for (T element : this) {
+            result.add(element);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private ConsList<T> current = ConsList.this;
+
+            @Override
+            public boolean hasNext() {
+                return current.size > 0;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T element = current.head;
+                current = current.tail;
+                return element;
+            }
+        };
+    }
+}
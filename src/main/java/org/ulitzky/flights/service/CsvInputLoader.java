@@ -0,0 +1,132 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reads the input CSV file record by record, converting every record and passing it on at once, so only the read buffer
+ * and one record are held in memory, whatever the size of the file is.
+ *
+ * The location is either the file system path, prefixed with "file:", or the classpath resource.
+ * The records, that cannot be converted, do not stop the reading: they are collected to the report with their record numbers.
+ */
+class CsvInputLoader {
+
+    static final String FILE_PREFIX = "file:";
+
+    /*
+     * Only this number of the invalid records is described in the report, the rest is counted
+     */
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private CsvInputLoader() {
+    }
+
+    /*
+     * @return the report of the loaded and the invalid records
+     * @throws IOException, if the input does not exist or cannot be read
+     */
+    static <T> Report load(final String location, final Function<CSVRecord, T> converter, final Consumer<T> consumer) throws IOException {
+        Report report = new Report(location);
+        try (Reader reader = openReader(location); CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT)) {
+            for (CSVRecord record : parser) {
+                T item;
+                try {
+                    item = converter.apply(record);
+                } catch (RuntimeException e) {
+                    report.addError(record.getRecordNumber(), e.getMessage());
+                    continue;
+                }
+                consumer.accept(item);
+                report.loaded++;
+            }
+        } catch (IllegalStateException e) {
+            // The parser reports the read errors while iterating this way
+            throw new IOException("Cannot read the input " + location, e);
+        }
+        return report;
+    }
+
+    /*
+     * @return the file system path of the location, or empty, if it is the classpath resource
+     */
+    static Optional<Path> getFilePath(final String location) {
+        return location.startsWith(FILE_PREFIX) ? Optional.of(Paths.get(location.substring(FILE_PREFIX.length()))) : Optional.empty();
+    }
+
+    private static Reader openReader(final String location) throws IOException {
+        Optional<Path> filePath = getFilePath(location);
+        if (filePath.isPresent()) {
+            return Files.newBufferedReader(filePath.get(), Charset.defaultCharset());
+        }
+
+        InputStream dataInputStream = CsvInputLoader.class.getResourceAsStream(location);
+        if (dataInputStream == null) {
+            throw new FileNotFoundException("Input not found " + location);
+        }
+        return new BufferedReader(new InputStreamReader(dataInputStream, Charset.defaultCharset()));
+    }
+
+    static class Report {
+        private final String location;
+
+        private long loaded;
+
+        private long errorsCount;
+
+        private final List<String> errors = new ArrayList<>();
+
+        Report(final String location) {
+            this.location = location;
+        }
+
+        private void addError(final long recordNumber, final String message) {
+            errorsCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("record " + recordNumber + ": " + message);
+            }
+        }
+
+        long getLoaded() {
+            return loaded;
+        }
+
+        long getErrorsCount() {
+            return errorsCount;
+        }
+
+        boolean hasErrors() {
+            return errorsCount > 0;
+        }
+
+        /*
+         * @return descriptions of the first invalid records
+         */
+        List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(location).append(": loaded ").append(loaded).append(", invalid ").append(errorsCount);
+            errors.forEach(error -> result.append("\n    ").append(error));
+            if (errorsCount > errors.size()) {
+                result.append("\n    ...");
+            }
+            return result.toString();
+        }
+    }
+}
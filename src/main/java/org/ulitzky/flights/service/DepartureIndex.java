@@ -0,0 +1,73 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The flights of the schedule, sorted by the departure time, with the departure times in the primitive array aside.
+ * The flights of the time range are found by the binary search, so the range query costs O(log n + k), not the scan of the whole schedule.
+ * The flights with the same departure time keep the order of the schedule.
+ */
+class DepartureIndex {
+
+    private final int[] departureTimes;
+
+    private final List<FlightAssignmentResource> flights;
+
+    /*
+     * @param departureTimes the departure times of the flights, in the same order
+     */
+    DepartureIndex(final List<Integer> departureTimes, final List<FlightAssignmentResource> flights) {
+        Integer[] order = new Integer[flights.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // The sort of the objects is stable
+        Arrays.sort(order, Comparator.comparingInt(departureTimes::get));
+
+        this.departureTimes = new int[order.length];
+        List<FlightAssignmentResource> sortedFlights = new ArrayList<>(order.length);
+        for (int i = 0; i < order.length; i++) {
+            this.departureTimes[i] = departureTimes.get(order[i]);
+            sortedFlights.add(flights.get(order[i]));
+        }
+        this.flights = Collections.unmodifiableList(sortedFlights);
+    }
+
+    /*
+     * @return the position of the first flight, departing at the given time or later, size(), if there is none
+     */
+    int lowerBound(final int time) {
+        int low = 0;
+        int high = departureTimes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departureTimes[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    int getDepartureTime(final int position) {
+        return departureTimes[position];
+    }
+
+    /*
+     * @return the flights between the given positions, the list is the view of the index
+     */
+    List<FlightAssignmentResource> getFlights(final int from, final int to) {
+        return flights.subList(from, to);
+    }
+
+    int size() {
+        return departureTimes.length;
+    }
+}
@@ -0,0 +1,100 @@
+package org.ulitzky.flights.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache (transposition table) of the search states, that are already known to have no solution.
+ * The search reaches the same state by the different orders of the assignments, the cache allows
+ * to drop such state at once, instead of exploring its whole subtree again.
+ *
+ * The least recently used states are evicted, when the capacity is reached. The cache is thread-safe.
+ */
+public class FailedStatesCache {
+
+    private final int capacity;
+
+    private final Map<StateFingerprint, Boolean> states;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    FailedStatesCache(final int capacity) {
+        this.capacity = capacity;
+        this.states = new LinkedHashMap<StateFingerprint, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<StateFingerprint, Boolean> eldest) {
+                if (size() > FailedStatesCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+     * @return true, if the state is known to have no solution
+     */
+    boolean contains(final StateFingerprint fingerprint) {
+        if (capacity <= 0) {
+            return false;
+        }
+
+        boolean found;
+        synchronized (states) {
+            found = states.get(fingerprint) != null;
+        }
+
+        if (found) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return found;
+    }
+
+    void add(final StateFingerprint fingerprint) {
+        if (capacity > 0) {
+            synchronized (states) {
+                states.put(fingerprint, Boolean.TRUE);
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSize() {
+        synchronized (states) {
+            return states.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("hits: ").append(getHits()).append("; misses: ").append(getMisses())
+          .append("; size: ").append(getSize()).append("; evictions: ").append(getEvictions());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.AircraftLocation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Cheap necessary condition for the state to have the solution, allowing to drop the doomed branches of the search at once.
+ *
+ * The aircrafts (at the time they are ready) and the arrivals of the flights to cover bring the aircrafts to the airports,
+ * the departures take them. Going through these events in time order it keeps the balance of the aircrafts per airport and in total:
+ *    - the total balance can never go below zero - there are no more aircrafts to take the flight
+ *    - the airport balance can go below zero only if the aircraft can be moved there from another airport in time.
+ *      No move can start before the earliest time an aircraft is ready and take less than the shortest flight to that airport.
+ *
+ * The same sweep gives the lower bound of the moves, still needed to cover the flights: every move brings one aircraft
+ * to one airport, so at least the largest deficit of every airport has to be moved there.
+ *
+ * The check takes linear time in the number of the flights to cover.
+ */
+class FeasibilityCheck {
+
+    /*
+     * The lower bound of the moves for the state, that cannot be completed at all
+     */
+    static final int INFEASIBLE = -1;
+
+    private final ScheduleProblem problem;
+
+    private final int[] shortestInboundDurations;
+
+    FeasibilityCheck(final ScheduleProblem problem) {
+        this.problem = problem;
+
+        RouteTable routes = problem.getRoutes();
+        shortestInboundDurations = new int[routes.getAirportsCount()];
+        for (int airport = 0; airport < routes.getAirportsCount(); airport++) {
+            shortestInboundDurations[airport] = routes.getShortestInboundDuration(airport);
+        }
+    }
+
+    /*
+     * @return false, if the flights to cover in the state can certainly not be covered by its aircrafts
+     */
+    boolean isFeasible(final FlightScheduleBuildingService.FlightScheduleState state) {
+        return calcMovesLowerBound(state) != INFEASIBLE;
+    }
+
+    /*
+     * @return the minimal number of the moves, needed to cover the flights to cover in the state by its aircrafts,
+     * or INFEASIBLE, if they can certainly not be covered
+     */
+    int calcMovesLowerBound(final FlightScheduleBuildingService.FlightScheduleState state) {
+        BitSet flightsToCover = state.getFlightsToCoverSet();
+        RouteTable routes = problem.getRoutes();
+
+        int aircraftsCount = state.getAircraftCount();
+        long[] readyEvents = new long[aircraftsCount];
+        for (int slot = 0; slot < aircraftsCount; slot++) {
+            AircraftLocation location = state.getAircraftLocation(slot);
+            // the ready time in the high bits, the airport in the low ones, so sorting sorts by time
+            readyEvents[slot] = ((long) location.getTime() << 32) | (routes.getAirportId(location.getAirport()) & 0xFFFFFFFFL);
+        }
+        Arrays.sort(readyEvents);
+        long earliestReadyTime = (aircraftsCount > 0) ? (readyEvents[0] >> 32) : Long.MAX_VALUE;
+
+        int[] arrivalOrder = problem.getArrivalOrder();
+        int[] balance = new int[routes.getAirportsCount()];
+        int[] deficits = new int[routes.getAirportsCount()];
+        int totalBalance = 0;
+        int nextReady = 0;
+        int nextArrival = 0;
+
+        for (int flight = flightsToCover.nextSetBit(0); flight >= 0; flight = flightsToCover.nextSetBit(flight + 1)) {
+            int time = problem.getDepartureTime(flight);
+
+            while (nextReady < aircraftsCount && (readyEvents[nextReady] >> 32) <= time) {
+                int airport = (int) readyEvents[nextReady++];
+                if (airport != RouteTable.UNKNOWN_AIRPORT) {
+                    balance[airport]++;
+                }
+                totalBalance++;
+            }
+            while (nextArrival < arrivalOrder.length && problem.getArrivalTime(arrivalOrder[nextArrival]) <= time) {
+                int arrivedFlight = arrivalOrder[nextArrival++];
+                if (flightsToCover.get(arrivedFlight)) {
+                    balance[problem.getDestinationId(arrivedFlight)]++;
+                    totalBalance++;
+                }
+            }
+
+            int origin = problem.getOriginId(flight);
+            balance[origin]--;
+            totalBalance--;
+
+            if (totalBalance < 0) {
+                return INFEASIBLE;
+            }
+            if (balance[origin] < 0) {
+                if (shortestInboundDurations[origin] == RouteTable.NO_ROUTE || time < earliestReadyTime + shortestInboundDurations[origin]) {
+                    return INFEASIBLE;
+                }
+                deficits[origin] = Math.max(deficits[origin], -balance[origin]);
+            }
+        }
+
+        int result = 0;
+        for (int deficit : deficits) {
+            result += deficit;
+        }
+        return result;
+    }
+}
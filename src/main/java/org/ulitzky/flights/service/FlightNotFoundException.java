@@ -0,0 +1,13 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the flight to change is not in the schedule
+ */
+public class FlightNotFoundException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FlightNotFoundException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,19 @@
+package org.ulitzky.flights.service;
+
+/**
+ * The order, in which the schedule search picks the next flight to schedule (property "solver.flight-ordering").
+ * The flight is always picked among the ones with the earliest departure time, only this flight is branched on:
+ * the other flights of the same departure time are scheduled deeper in the tree.
+ */
+public enum FlightOrdering {
+
+    /*
+     * The first one in the order of the input
+     */
+    EARLIEST,
+
+    /*
+     * The one with the fewest aircrafts, ready at its origin (fail first): the dead ends are found closer to the root
+     */
+    MOST_CONSTRAINED
+}
@@ -0,0 +1,28 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+
+import java.util.List;
+
+/**
+ * One page of the flight plan, sorted by the departure time, with the cursor of the next page, null for the last page
+ */
+public class FlightPlanPage {
+
+    private final List<FlightAssignmentResource> flights;
+
+    private final String nextCursor;
+
+    public FlightPlanPage(final List<FlightAssignmentResource> flights, final String nextCursor) {
+        this.flights = flights;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FlightAssignmentResource> getFlights() {
+        return flights;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -1,12 +1,14 @@
 package org.ulitzky.flights.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.ulitzky.flights.model.*;
 
 import java.util.*;
-
-import static java.util.stream.Collectors.groupingBy;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 /**
  * Created by lulitzky on 19.04.18.
@@ -15,19 +17,335 @@ import static java.util.stream.Collectors.groupingBy;
 @Slf4j
 public class FlightScheduleBuildingService {
 
+    /*
+     * The algorithm to build the schedule with, see SolverEngine
+     */
+    @Value("${solver.engine:BACKTRACKING}")
+    private SolverEngine engine = SolverEngine.BACKTRACKING;
+
+    /*
+     * Which of the earliest flights the search schedules next, see FlightOrdering
+     */
+    @Value("${solver.flight-ordering:EARLIEST}")
+    private FlightOrdering flightOrdering = FlightOrdering.EARLIEST;
+
+    /*
+     * In which order the search tries the aircrafts for the flight, see AircraftOrdering
+     */
+    @Value("${solver.aircraft-ordering:LIST}")
+    private AircraftOrdering aircraftOrdering = AircraftOrdering.LIST;
+
+    /*
+     * Number of worker threads, exploring the search tree. 1 means the sequential search in the calling thread.
+     */
+    @Value("${solver.parallelism:1}")
+    private int parallelism = 1;
+
+    /*
+     * Number of the top levels of the search tree, that are split into separate fork-join tasks in the parallel mode.
+     * Deeper levels are explored sequentially by the task, that reached them.
+     */
+    @Value("${solver.parallel-depth:2}")
+    private int parallelDepth = 2;
+
+    /*
+     * Whether to check the flights can be covered at all before the search and to drop the states, that certainly
+     * cannot lead to the solution, during the search (see FeasibilityCheck)
+     */
+    @Value("${solver.feasibility-check:true}")
+    private boolean feasibilityCheck = true;
+
+    /*
+     * Maximal number of the states, known to have no solution, that are remembered during the search run. 0 disables the cache.
+     */
+    @Value("${solver.failed-states-cache-size:100000}")
+    private int failedStatesCacheSize = 100000;
+
+    /*
+     * Maximal number of the states, explored by one search run. 0 means no limit.
+     */
+    @Value("${solver.max-nodes:0}")
+    private long maxNodes = 0;
+
+    /*
+     * Time limit of one search run in milliseconds. 0 means no limit.
+     */
+    @Value("${solver.time-limit-ms:0}")
+    private long timeLimitMillis = 0;
+
+    /*
+     * Whether to search for the schedule with the least moves of the aircrafts (branch and bound), instead of the first found one.
+     * The search goes on after the first schedule, until no schedule with less moves is possible or the node or time limit is reached -
+     * then the best schedule, found so far, is returned with its optimality gap.
+     */
+    @Value("${solver.minimize-moves:false}")
+    private boolean minimizeMoves = false;
+
+    /*
+     * Whether to return the schedule, covering as many flights as possible, when not all of them can be covered,
+     * instead of no schedule. The flights, that are left out, are returned by the caller as the uncovered ones.
+     */
+    @Value("${solver.partial-coverage:false}")
+    private boolean partialCoverage = false;
+
+    /*
+     * Time limit of the search for the best partial schedule in milliseconds: the search goes on improving the schedule
+     * until no schedule can cover more flights or until this deadline. 0 means no limit.
+     */
+    @Value("${solver.partial-coverage-time-limit-ms:10000}")
+    private long partialCoverageTimeLimitMillis = 10000;
+
+    /*
+     * Length of the rolling horizon window in minutes, e.g. 1440 to schedule day by day. The windows follow one after another
+     * from the first departure on, every window starts with the aircrafts, where the previous one left them.
+     * 0 (the default) schedules all the flights at once.
+     */
+    @Value("${solver.horizon-window-minutes:0}")
+    private int horizonWindowMinutes = 0;
+
+    /*
+     * The window is scheduled together with the flights of this number of minutes after it, so it does not leave
+     * the aircrafts, where the next flights cannot be covered. Only the flights of the window itself are kept.
+     */
+    @Value("${solver.horizon-lookahead-minutes:0}")
+    private int horizonLookaheadMinutes = 0;
+
+    /*
+     * The cache of the latest search run, exposes its hit/miss counters
+     */
+    private volatile FailedStatesCache failedStatesCache = new FailedStatesCache(0);
+
+    /*
+     * The statistics of the latest search run
+     */
+    private volatile SearchStatistics lastRunStatistics = new SearchStatistics(0);
+
+    /*
+     * The stack of the sequential search, reused by all the runs in the same thread
+     */
+    private final ThreadLocal<SearchStack> searchStack = ThreadLocal.withInitial(SearchStack::new);
+
+    /*
+     * The limits of every search run of one build and whether the runs are reported as the latest search run
+     * (getLastRunStatistics, getFailedStatesCache). Only the builds of the schedule of the service are reported.
+     */
+    private static final class SearchBudget {
+
+        private final long maxNodes;
+
+        private final long timeLimitMillis;
+
+        private final long partialCoverageTimeLimitMillis;
+
+        private final boolean published;
+
+        private SearchBudget(final long maxNodes, final long timeLimitMillis, final long partialCoverageTimeLimitMillis, final boolean published) {
+            this.maxNodes = maxNodes;
+            this.timeLimitMillis = timeLimitMillis;
+            this.partialCoverageTimeLimitMillis = partialCoverageTimeLimitMillis;
+            this.published = published;
+        }
+    }
 
     /*
      * Build the flight schedule for given flights and initial locations of the airfleet.
+     * With the rolling horizon window configured, the schedule is built window by window.
      *
      * @return list of flight assignments, if the solution is found
      * @return Optional.empty(), if the schedule cannot be built
+     * @throws SearchBudgetExhaustedException, if the search reached its node or time limit before it could decide
      */
     public Optional<List<FlightAssignment>> buildFlilghtAssignments(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover) {
+        return buildFlilghtAssignments(homeBaseList, flightsToCover, schedule -> { });
+    }
 
-        FlightScheduleState initialState = new FlightScheduleState(new LinkedList<FlightAssignment>(), homeBaseList, flightsToCover);
+    /*
+     * Same as above. With the partial coverage configured, the schedule, covering the most flights, is returned,
+     * when not all of them can be covered, and every better partial schedule is passed to the given consumer, as soon as it is found,
+     * so it can be used, while the search goes on improving it. The partial schedules of the rolling horizon windows are not passed.
+     */
+    public Optional<List<FlightAssignment>> buildFlilghtAssignments(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover,
+                                                                    final Consumer<List<FlightAssignment>> improvedSchedules) {
+        return buildFlightAssignments(homeBaseList, flightsToCover, partialCoverage, improvedSchedules, null, configuredBudget());
+    }
 
-        FlightScheduleState solution =  buildFlilghtAssignments(initialState);
-        if (solution == null) {
+    /*
+     * Same as above, for the schedule apart from the one of the service (the what-if scenario): every search run is limited
+     * by the given budget instead of the configured one (also the search for the partial schedule, if it is configured),
+     * and it is not reported as the latest search run.
+     *
+     * @param maxNodes maximal number of the states, explored by one search run, 0 means no limit
+     * @param timeLimitMillis time limit of one search run in milliseconds, 0 means no limit
+     */
+    public Optional<List<FlightAssignment>> buildFlilghtAssignments(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover,
+                                                                    final long maxNodes, final long timeLimitMillis) {
+        return buildFlightAssignments(homeBaseList, flightsToCover, partialCoverage, schedule -> { }, null,
+                                      new SearchBudget(maxNodes, timeLimitMillis, timeLimitMillis, false));
+    }
+
+    private SearchBudget configuredBudget() {
+        return new SearchBudget(maxNodes, timeLimitMillis, partialCoverageTimeLimitMillis, true);
+    }
+
+    /*
+     * @param routes the route table of all the flights, the given ones are a part of, null to build it from the given flights
+     */
+    private Optional<List<FlightAssignment>> buildFlightAssignments(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover,
+                                                                    final boolean allowUncovered, final Consumer<List<FlightAssignment>> improvedSchedules,
+                                                                    final RouteTable routes, final SearchBudget budget) {
+        if (horizonWindowMinutes > 0 && !flightsToCover.isEmpty()) {
+            return buildFlightAssignmentsInWindows(homeBaseList, flightsToCover, allowUncovered, routes, budget);
+        }
+        return solveFlightAssignments(homeBaseList, flightsToCover, allowUncovered, improvedSchedules, routes, budget);
+    }
+
+    /*
+     * Build the schedule window by window (rolling horizon). Every window is one search run, so the cost grows
+     * with the number of the windows and not with the whole horizon, but the choices of the window are not revised later:
+     * if the window cannot be scheduled, the schedule fails. The route table is built once from all the flights and shared by the windows.
+     */
+    private Optional<List<FlightAssignment>> buildFlightAssignmentsInWindows(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover,
+                                                                             final boolean allowUncovered, final RouteTable routes,
+                                                                             final SearchBudget budget) {
+        List<Flight> flights = new ArrayList<>(flightsToCover);
+        flights.sort(Comparator.comparingInt(Flight::getDepartureTime));
+        RouteTable windowRoutes = (routes != null) ? routes : new RouteTable(flights);
+
+        Map<Aircraft, AircraftLocation> locations = new LinkedHashMap<>();
+        homeBaseList.forEach(location -> locations.put(location.getAircraft(), location));
+
+        List<FlightAssignment> result = new ArrayList<>(flights.size());
+        int windowStart = flights.get(0).getDepartureTime();
+        int from = 0;
+        while (from < flights.size()) {
+            int windowEnd = windowStart + horizonWindowMinutes;
+            if (flights.get(from).getDepartureTime() >= windowEnd) {
+                // Skip the windows without the flights
+                windowStart += (flights.get(from).getDepartureTime() - windowStart) / horizonWindowMinutes * horizonWindowMinutes;
+                continue;
+            }
+
+            int to = from;
+            int kept = from;
+            while (to < flights.size() && flights.get(to).getDepartureTime() < windowEnd + horizonLookaheadMinutes) {
+                if (flights.get(to).getDepartureTime() < windowEnd) {
+                    kept++;
+                }
+                to++;
+            }
+
+            log.info("Scheduling the window from {}: {} flights and {} flights ahead", Flight.formatTime(windowStart), kept - from, to - kept);
+            Optional<List<FlightAssignment>> window = solveFlightAssignments(new ArrayList<>(locations.values()), flights.subList(from, to),
+                                                                               allowUncovered, schedule -> { }, windowRoutes, budget);
+            if (!window.isPresent()) {
+                log.error("Cannot build the flight schedule for the window from {}", Flight.formatTime(windowStart));
+                return Optional.empty();
+            }
+
+            for (Map.Entry<Aircraft, List<FlightAssignment>> rotation : groupByAircraft(window.get()).entrySet()) {
+                int keptCount = countKeptAssignments(rotation.getValue(), windowEnd);
+                if (keptCount > 0) {
+                    result.addAll(rotation.getValue().subList(0, keptCount));
+                    locations.put(rotation.getKey(), locationAfter(rotation.getValue(), keptCount));
+                }
+            }
+
+            from = kept;
+            windowStart = windowEnd;
+        }
+
+        result.sort(Comparator.comparingInt(assignment -> assignment.getFlight().getDepartureTime()));
+        return Optional.of(result);
+    }
+
+    /*
+     * @return the assignments of every aircraft, in the order of the schedule
+     */
+    private static Map<Aircraft, List<FlightAssignment>> groupByAircraft(final List<FlightAssignment> schedule) {
+        Map<Aircraft, List<FlightAssignment>> result = new LinkedHashMap<>();
+        for (FlightAssignment assignment : schedule) {
+            result.computeIfAbsent(assignment.getAircraft(), k -> new ArrayList<>()).add(assignment);
+        }
+        return result;
+    }
+
+    /*
+     * @return the number of the first assignments of the rotation, departing before the cutoff.
+     * The moves at the end are not counted: they belong to the flight after them, that departs after the cutoff.
+     */
+    private static int countKeptAssignments(final List<FlightAssignment> rotation, final int cutoffTime) {
+        int kept = 0;
+        while (kept < rotation.size() && rotation.get(kept).getFlight().getDepartureTime() < cutoffTime) {
+            kept++;
+        }
+        while (kept > 0 && rotation.get(kept - 1).isMove()) {
+            kept--;
+        }
+        return kept;
+    }
+
+    /*
+     * @return the location of the aircraft after the given number of the first assignments of its rotation
+     */
+    private static AircraftLocation locationAfter(final List<FlightAssignment> rotation, final int kept) {
+        FlightAssignment last = rotation.get(kept - 1);
+        return new AircraftLocation(last.getAircraft(), last.getFlight().getDestination(), last.getFlight().getScheduledArrivalTime());
+    }
+
+    /*
+     * Build the schedule of the given flights by one search run.
+     * If the flights cannot be covered and the uncovered flights are allowed, the second run searches for the schedule, covering the most of them.
+     */
+    private Optional<List<FlightAssignment>> solveFlightAssignments(final List<AircraftLocation> homeBaseList, final List<Flight> flightsToCover,
+                                                                    final boolean allowUncovered, final Consumer<List<FlightAssignment>> improvedSchedules,
+                                                                    final RouteTable routes, final SearchBudget budget) {
+        ScheduleProblem problem = new ScheduleProblem(flightsToCover, routes);
+
+        if (engine == SolverEngine.MATCHING) {
+            Optional<List<FlightAssignment>> matchedSchedule = new MatchingScheduleEngine(problem, homeBaseList).buildFlightAssignments();
+            if (matchedSchedule.isPresent()) {
+                return matchedSchedule;
+            }
+            log.info("The flights cannot be covered without moving the aircrafts, searching for the schedule with the moves");
+        }
+
+        FlightScheduleState initialState = new FlightScheduleState(problem, homeBaseList);
+
+        SearchContext context = createContext(problem, homeBaseList.size(), budget);
+        if (budget.published) {
+            failedStatesCache = context.getFailedStates();
+            lastRunStatistics = context.getStatistics();
+        }
+
+        if (feasibilityCheck && !(context.isFeasible(initialState) && new MatchingScheduleEngine(problem, homeBaseList, true).canCoverAllFlights())) {
+            log.error("Cannot build the flight schedule, the flights cannot be covered by the aircrafts even with the moves");
+            return allowUncovered ? solvePartialFlightAssignments(problem, homeBaseList, true, improvedSchedules, budget) : Optional.empty();
+        }
+
+        context.getStatistics().setMovesLowerBound(Math.max(0, context.calcMovesLowerBound(initialState)));
+
+        FlightScheduleState solution = (parallelism > 1) ? buildFlilghtAssignmentsInParallel(initialState, context) : buildFlilghtAssignments(initialState, context);
+        if (minimizeMoves) {
+            solution = context.getSolution();
+            if (solution != null && !context.isBudgetExhausted()) {
+                // The whole tree was explored or the lower bound was reached, no schedule has less moves
+                context.getStatistics().setMovesLowerBound(solution.getMovesCount());
+            } else if (solution != null) {
+                log.warn("Search budget exhausted, using the best schedule found with {} moves, the optimal one may have {} moves less",
+                         solution.getMovesCount(), context.getStatistics().getOptimalityGap());
+            }
+        }
+        log.info("Search finished, {}; failed states cache {}", context.getStatistics(), context.getFailedStates());
+        if (log.isDebugEnabled()) {
+            log.debug("Branching factor per depth {}", Arrays.toString(context.getStatistics().getBranchingFactors()));
+        }
+        if (solution == null && allowUncovered) {
+            log.warn("Cannot cover all the flights, searching for the schedule, covering the most of them");
+            return solvePartialFlightAssignments(problem, homeBaseList, !context.isBudgetExhausted(), improvedSchedules, budget);
+        } else if (solution == null && context.isBudgetExhausted()) {
+            log.error("Search budget exhausted after {} explored states and {} ms", context.getNodesExpanded(), context.getElapsedMillis());
+            throw new SearchBudgetExhaustedException(context.getNodesExpanded(), context.getElapsedMillis());
+        } else if (solution == null) {
             log.error("Cannot build the flight schedule");
             return Optional.empty();
         } else {
@@ -37,75 +355,418 @@ public class FlightScheduleBuildingService {
     }
 
     /*
-     * Recursilvely builds the flighht schedule for the given state.
+     * Search for the schedule, covering the most flights (branch and bound): every flight may also be left uncovered,
+     * the first schedule is found at once and the search goes on, dropping the branches, that cannot leave less flights uncovered.
+     * It stops, when no schedule can cover more flights, or at the node limit or the partial coverage time limit,
+     * then the best schedule found is returned. The search is always sequential.
+     *
+     * @param noFullCover whether it is already known, that not all the flights can be covered
+     * @param improvedSchedules gets every schedule, that covers more flights, than the ones found before it
+     */
+    private Optional<List<FlightAssignment>> solvePartialFlightAssignments(final ScheduleProblem problem, final List<AircraftLocation> homeBaseList,
+                                                                           final boolean noFullCover, final Consumer<List<FlightAssignment>> improvedSchedules,
+                                                                           final SearchBudget budget) {
+        FlightScheduleState initialState = new FlightScheduleState(problem, homeBaseList);
+
+        SearchContext context = new SearchContext(new FailedStatesCache(0), feasibilityCheck ? new FeasibilityCheck(problem) : null,
+                                                  new SearchStatistics(problem.getFlightsCount()), budget.maxNodes, budget.partialCoverageTimeLimitMillis,
+                                                  false, true, solution -> improvedSchedules.accept(solution.getScheduledFlights()),
+                                                  createHistory(problem, homeBaseList.size()));
+        if (budget.published) {
+            failedStatesCache = context.getFailedStates();
+            lastRunStatistics = context.getStatistics();
+        }
+        context.getStatistics().setUncoveredLowerBound(noFullCover ? 1 : 0);
+
+        buildFlilghtAssignments(initialState, context);
+        FlightScheduleState solution = context.getSolution();
+        log.info("Partial coverage search finished, {}", context.getStatistics());
+        if (solution == null) {
+            log.error("Search budget exhausted after {} explored states and {} ms", context.getNodesExpanded(), context.getElapsedMillis());
+            throw new SearchBudgetExhaustedException(context.getNodesExpanded(), context.getElapsedMillis());
+        }
+
+        if (context.isBudgetExhausted()) {
+            log.warn("Search budget exhausted, using the best schedule found, leaving {} of {} flights uncovered",
+                     solution.getUncoveredFlightsCount(), problem.getFlightsCount());
+        } else {
+            log.warn("No schedule covers more flights, leaving {} of {} flights uncovered", solution.getUncoveredFlightsCount(), problem.getFlightsCount());
+        }
+        return Optional.of(solution.getScheduledFlights());
+    }
+
+    /*
+     * Repair the built schedule after the given flights were cancelled and added (the retimed flight is both).
+     * The schedule is kept up to the cutoff - the departure of the earliest changed flight. After the cutoff only the rotations
+     * of the affected aircrafts are searched again, starting from where their kept flights leave them:
+     *    - first the aircrafts of the cancelled flights and the aircrafts, that are free at the origin of the added flights
+     *    - if they cannot cover the changed rotations, all the aircrafts
+     * So the size of the search depends on the change and not on the whole schedule. The routes are still known from all the flights,
+     * so the affected aircrafts can move through the airports of the kept flights.
+     *
+     * @param homeBaseList the initial locations of the airfleet, the schedule was built for
+     * @param schedule the schedule to repair
+     * @param cancelledFlights the flights of the schedule, that are not operated any more
+     * @param addedFlights the new flights to cover
+     * @return the repaired schedule, or Optional.empty(), if the changed flights cannot be covered without changing the schedule before the cutoff
+     */
+    public Optional<List<FlightAssignment>> repairFlightAssignments(final List<AircraftLocation> homeBaseList, final List<FlightAssignment> schedule,
+                                                                    final List<Flight> cancelledFlights, final List<Flight> addedFlights) {
+        int cutoffTime = Integer.MAX_VALUE;
+        for (Flight flight : cancelledFlights) {
+            cutoffTime = Math.min(cutoffTime, flight.getDepartureTime());
+        }
+        for (Flight flight : addedFlights) {
+            cutoffTime = Math.min(cutoffTime, flight.getDepartureTime());
+        }
+
+        Set<Flight> cancelled = Collections.newSetFromMap(new IdentityHashMap<>());
+        cancelled.addAll(cancelledFlights);
+
+        List<Flight> allFlights = new ArrayList<>(schedule.size() + addedFlights.size());
+        for (FlightAssignment assignment : schedule) {
+            if (!assignment.isMove() && !cancelled.contains(assignment.getFlight())) {
+                allFlights.add(assignment.getFlight());
+            }
+        }
+        allFlights.addAll(addedFlights);
+        RouteTable routes = new RouteTable(allFlights);
+
+        // The rotations of the aircrafts, in the order of the schedule, and where every aircraft is at the cutoff
+        Map<Aircraft, List<FlightAssignment>> rotations = new LinkedHashMap<>();
+        Map<Aircraft, AircraftLocation> homeBases = new HashMap<>();
+        for (AircraftLocation location : homeBaseList) {
+            rotations.put(location.getAircraft(), new ArrayList<>());
+            homeBases.put(location.getAircraft(), location);
+        }
+        groupByAircraft(schedule).forEach((aircraft, rotation) -> rotations.computeIfAbsent(aircraft, k -> new ArrayList<>()).addAll(rotation));
+
+        Map<Aircraft, Integer> keptCounts = new HashMap<>();
+        Map<Aircraft, AircraftLocation> cutoffLocations = new LinkedHashMap<>();
+        for (Map.Entry<Aircraft, List<FlightAssignment>> rotation : rotations.entrySet()) {
+            List<FlightAssignment> flights = rotation.getValue();
+            int kept = countKeptAssignments(flights, cutoffTime);
+            keptCounts.put(rotation.getKey(), kept);
+
+            if (kept > 0) {
+                cutoffLocations.put(rotation.getKey(), locationAfter(flights, kept));
+            } else {
+                AircraftLocation homeBase = homeBases.get(rotation.getKey());
+                cutoffLocations.put(rotation.getKey(), (homeBase != null) ? homeBase
+                        : new AircraftLocation(rotation.getKey(), flights.get(0).getFlight().getOrigin(), AircraftLocation.TIME_NOT_SET));
+            }
+        }
+
+        Set<Aircraft> affected = new LinkedHashSet<>();
+        for (FlightAssignment assignment : schedule) {
+            if (cancelled.contains(assignment.getFlight())) {
+                affected.add(assignment.getAircraft());
+            }
+        }
+        for (Flight flight : addedFlights) {
+            for (AircraftLocation location : cutoffLocations.values()) {
+                if (location.getAirport().equals(flight.getOrigin()) && location.getTime() <= flight.getDepartureTime()) {
+                    affected.add(location.getAircraft());
+                }
+            }
+        }
+
+        List<Set<Aircraft>> escalation = new ArrayList<>();
+        if (!affected.isEmpty() && affected.size() < rotations.size()) {
+            escalation.add(affected);
+        }
+        escalation.add(rotations.keySet());
+
+        for (Set<Aircraft> aircrafts : escalation) {
+            List<FlightAssignment> result = new ArrayList<>(schedule.size() + addedFlights.size());
+            List<AircraftLocation> locations = new ArrayList<>(aircrafts.size());
+            List<Flight> flightsToCover = new ArrayList<>(addedFlights);
+            for (Map.Entry<Aircraft, List<FlightAssignment>> rotation : rotations.entrySet()) {
+                if (!aircrafts.contains(rotation.getKey())) {
+                    result.addAll(rotation.getValue());
+                    continue;
+                }
+                List<FlightAssignment> flights = rotation.getValue();
+                int kept = keptCounts.get(rotation.getKey());
+                result.addAll(flights.subList(0, kept));
+                locations.add(cutoffLocations.get(rotation.getKey()));
+                for (FlightAssignment assignment : flights.subList(kept, flights.size())) {
+                    if (!assignment.isMove() && !cancelled.contains(assignment.getFlight())) {
+                        flightsToCover.add(assignment.getFlight());
+                    }
+                }
+            }
+
+            log.info("Repairing the schedule from {}: {} flights of {} aircrafts", Flight.formatTime(cutoffTime), flightsToCover.size(), aircrafts.size());
+            Optional<List<FlightAssignment>> repaired;
+            try {
+                repaired = buildFlightAssignments(locations, flightsToCover, false, partialSchedule -> { }, routes, configuredBudget());
+            } catch (SearchBudgetExhaustedException e) {
+                repaired = Optional.empty();
+            }
+            if (repaired.isPresent()) {
+                result.addAll(repaired.get());
+                result.sort(Comparator.comparingInt(assignment -> assignment.getFlight().getDepartureTime()));
+                return Optional.of(result);
+            }
+        }
+
+        log.error("Cannot repair the schedule from {}", Flight.formatTime(cutoffTime));
+        return Optional.empty();
+    }
+
+    /*
+     * Builds the flighht schedule for the given state.
      *  The algorithm is like follows:
      *    - If no unscheduled flights left, return the already built schedule (from the state) asthe solution
      *    - Take the earliest unschedule flight and try to schedule it by all possible way.
-     *    - For each possible schedule, create the new state, adding the assignment to the schedule and run this method recursivley for the new state
+     *      If several flights depart at the same time, only one of them (see FlightOrdering) is branched on: the others
+     *      are scheduled deeper in the tree, trying them here as well would only explore the same schedules again.
+     *    - For each possible schedule, create the new state, adding the assignment to the schedule and continue the search from the new state
      *    - If no possible assignment exists for the flight, try to bring the fere aircraft o the origin in time - that will cost the additional flight,
      *      but will allow to build the schedule
-     *    - If it does not help - return null, as no solution exists for this state
+     *    - If it does not help - go back, as no solution exists for this state
+     *
+     *  The search is depth-first. It goes as deep as the number of the flights, so instead of the recursion it keeps its path
+     *  on the explicit stack (see SearchStack).
      *
      *    @return the new state with scheduled flights, if solution exists.
      *    @return null, if the solutino does not exists for this state
      *
      */
     FlightScheduleState buildFlilghtAssignments(final FlightScheduleState state) {
-        log.info("Building flight assignments, number of alredy scheduled flights {}, flights to schedule {}", state.getScheduledFlights().size(), state.getFlightsToCover().size());
-        if (state.getFlightsToCover().isEmpty()) {
-            return state;
-        } else {
-            TreeMap<Date, List<Flight>> flightsMap = mapFlightsByDepartureTime(state.getFlightsToCover());
+        return buildFlilghtAssignments(state, createContext(state.getProblem(), state.getAircraftCount(), configuredBudget()));
+    }
 
-            Date currTime = flightsMap.firstKey();
-            List<Flight> currFlights = flightsMap.firstEntry().getValue();
+    private SearchContext createContext(final ScheduleProblem problem, final int aircraftCount, final SearchBudget budget) {
+        return new SearchContext(new FailedStatesCache(minimizeMoves ? 0 : failedStatesCacheSize),
+                                 (feasibilityCheck || minimizeMoves) ? new FeasibilityCheck(problem) : null,
+                                 new SearchStatistics(problem.getFlightsCount()), budget.maxNodes, budget.timeLimitMillis, minimizeMoves,
+                                 false, solution -> { }, createHistory(problem, aircraftCount));
+    }
 
-            state.getAircraftLocations().stream().filter(l -> l.getTime() == null).forEach(l -> l.setTime(currTime));
+    private AssignmentHistory createHistory(final ScheduleProblem problem, final int aircraftCount) {
+        return (aircraftOrdering == AircraftOrdering.HISTORY) ? new AssignmentHistory(problem.getFlightsCount(), aircraftCount) : null;
+    }
 
-            for (Flight currFlight : currFlights) {
-                List<AircraftLocation> possibleMatches = findMatchingAircrafts(currFlight, state.getAircraftLocations());
-                log.debug("Number of possible matches fot flight {} -  {}", currFlight, possibleMatches.size());
+    /*
+     * Same as above, within the given search run:
+     *    - gives up as soon as the solution is published by another search task or the budget of the run is exhausted
+     *    - drops the state at once, if it is already known to have no solution or fails the feasibility check,
+     *      and remembers it, if its subtree has no solution (also in the history of the assignments, if it is used)
+     *    - when the moves are minimized or the flights may be left uncovered, goes on after the solution is found,
+     *      keeping the best one in the context
+     *
+     *    @return null, if the solution does not exist for this state, was already found elsewhere or the budget is exhausted
+     */
+    FlightScheduleState buildFlilghtAssignments(final FlightScheduleState initialState, final SearchContext context) {
+        SearchStack stack = searchStack.get();
+        try {
+            FlightScheduleState state = initialState;
+            while (true) {
+                if (context.isStopped()) {
+                    return null;
+                }
 
-                for (AircraftLocation match : possibleMatches) {
-                    FlightScheduleState newState = buildNewState(state, currFlight, match);
-                    FlightScheduleState processedState = buildFlilghtAssignments(newState);
-                    if ((processedState != null) && processedState.getFlightsToCover().isEmpty()) {
-                        return processedState;
+                if (state != null) {
+                    if (!context.countNode(state.getDepth())) {
+                        return null;
                     }
-                }
-                List<FlightScheduleState> artificalStates = calcMoveAircraftStates(state, currFlight);
-                for (FlightScheduleState artificialState : artificalStates) {
-                    possibleMatches = findMatchingAircrafts(currFlight, artificialState.getAircraftLocations());
-                    for (AircraftLocation match : possibleMatches) {
-                        FlightScheduleState newState = buildNewState(artificialState, currFlight, match);
-                        FlightScheduleState processedState = buildFlilghtAssignments(newState);
-                        if ((processedState != null) && processedState.getFlightsToCover().isEmpty()) {
-                            return processedState;
+                    if (state.isComplete()) {
+                        context.publishSolution(state);
+                        if (!context.isOptimizing()) {
+                            return state;
                         }
+                    } else {
+                        StateFingerprint fingerprint = state.fingerprint();
+                        if (context.getFailedStates().contains(fingerprint)) {
+                            context.countDeadEnd(state);
+                        } else if (context.isFeasible(state)) {
+                            context.getStatistics().countExpanded(state.getDepth());
+                            SearchStack.Frame frame = stack.push(state, fingerprint, selectFlight(state));
+                            buildDirectChildren(frame, context);
+                        } else {
+                            context.getFailedStates().add(fingerprint);
+                            context.countDeadEnd(state);
+                        }
+                    }
+                }
+
+                if (stack.isEmpty()) {
+                    return null;
+                }
+
+                SearchStack.Frame frame = stack.peek();
+                state = takeNextChild(frame, context);
+                if (state == null) {
+                    // The subtree was explored completely only if the search was not stopped
+                    if (!context.isStopped()) {
+                        context.getFailedStates().add(frame.fingerprint);
+                        context.getStatistics().countBacktrack();
+                        context.countDeadEnd(frame.state);
                     }
+                    stack.pop();
                 }
             }
+        } finally {
+            stack.clear();
+        }
+    }
+
+    /*
+     * @return the next child state of the frame to explore, or null, if all the children were explored
+     */
+    private FlightScheduleState takeNextChild(final SearchStack.Frame frame, final SearchContext context) {
+        while (true) {
+            FlightScheduleState child = frame.takeBuiltChild();
+            if (child != null) {
+                return child;
+            }
+
+            if (!frame.movesExpanded) {
+                buildMovedChildren(frame, context);
+            } else if (context.isAllowingUncovered() && !frame.uncoveredExpanded) {
+                buildUncoveredChild(frame, context.getStatistics());
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /*
+     * Build the children states, scheduling the flight of the frame by the aircrafts, that are already at its origin
+     */
+    private void buildDirectChildren(final SearchStack.Frame frame, final SearchContext context) {
+        frame.clearChildren();
+        frame.movesExpanded = false;
+
+        for (int match : orderAircrafts(frame.state, frame.flight, findMatchingAircrafts(frame.state, frame.flight), context.getHistory())) {
+            frame.children.add(buildNewState(frame.state, frame.flight, match));
+        }
+        context.getStatistics().countChildren(frame.state.getDepth(), frame.children.size(), false);
+    }
+
+    /*
+     * Build the children states, scheduling the flight of the frame by the aircrafts, moved to its origin
+     */
+    private void buildMovedChildren(final SearchStack.Frame frame, final SearchContext context) {
+        frame.clearChildren();
+        frame.movesExpanded = true;
+
+        for (FlightScheduleState artificialState : calcMoveAircraftStates(frame.state, frame.flight)) {
+            for (int match : orderAircrafts(artificialState, frame.flight, findMatchingAircrafts(artificialState, frame.flight), context.getHistory())) {
+                frame.children.add(buildNewState(artificialState, frame.flight, match));
+            }
         }
+        context.getStatistics().countChildren(frame.state.getDepth(), frame.children.size(), true);
+    }
+
+    /*
+     * Build the child state, leaving the flight of the frame uncovered. It is the last child: the flights are only left uncovered,
+     * when covering them does not lead to the better schedule.
+     */
+    private void buildUncoveredChild(final SearchStack.Frame frame, final SearchStatistics statistics) {
+        frame.clearChildren();
+        frame.uncoveredExpanded = true;
 
-        return null;
+        frame.children.add(frame.state.leaveUncovered(frame.flight));
+        statistics.countChildren(frame.state.getDepth(), 1, false);
+    }
+
+    /*
+     * Parallel version of the search. The top levels of the search tree are split into fork-join tasks,
+     * one per possible assignment (with or without the aircraft move), and explored by the pool of the configured size.
+     * The first complete solution found by any task is published and makes all other tasks stop.
+     *
+     *    @return the new state with scheduled flights, if solution exists.
+     *    @return null, if the solution does not exist
+     */
+    FlightScheduleState buildFlilghtAssignmentsInParallel(final FlightScheduleState initialState, final SearchContext context) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ParallelSearchTask(initialState, 0, context));
+        } finally {
+            pool.shutdownNow();
+        }
+        return context.getSolution();
+    }
+
+    /*
+     * Select the flight to be scheduled next among the flights with the earliest departure time, by the configured FlightOrdering.
+     * The flights to cover are sorted by departure time, so these are the first flights left in the state.
+     *
+     * @return index of the flight
+     */
+    private int selectFlight(final FlightScheduleState state) {
+        BitSet flightsToCover = state.getFlightsToCoverSet();
+        int first = flightsToCover.nextSetBit(0);
+        if (flightOrdering == FlightOrdering.EARLIEST) {
+            return first;
+        }
+
+        int currTime = state.getDepartureTime(first);
+        int result = first;
+        int resultMatches = countMatchingAircrafts(state, first);
+        for (int i = flightsToCover.nextSetBit(first + 1); i >= 0 && resultMatches > 0 && state.getDepartureTime(i) == currTime;
+             i = flightsToCover.nextSetBit(i + 1)) {
+            int matches = countMatchingAircrafts(state, i);
+            if (matches < resultMatches) {
+                result = i;
+                resultMatches = matches;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Order the slots of the aircrafts, that can serve the flight, by the configured AircraftOrdering.
+     * The sort is stable, the aircrafts with the same key stay in the list order.
+     *
+     * @param history the history of the dead ends of the run, null, if it is not kept
+     * @return the given slots, sorted in place
+     */
+    private int[] orderAircrafts(final FlightScheduleState state, final int flightIndex, final int[] slots, final AssignmentHistory history) {
+        if (slots.length < 2 || aircraftOrdering == AircraftOrdering.LIST || (aircraftOrdering == AircraftOrdering.HISTORY && history == null)) {
+            return slots;
+        }
+
+        int[] keys = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            keys[i] = (aircraftOrdering == AircraftOrdering.LEAST_SLACK)
+                    ? state.getDepartureTime(flightIndex) - state.getAircraftLocation(slots[i]).getTime()
+                    : history.getFailures(flightIndex, slots[i]);
+        }
+        // Insertion sort, there are few aircrafts at one airport
+        for (int i = 1; i < slots.length; i++) {
+            int slot = slots[i];
+            int key = keys[i];
+            int j = i - 1;
+            for (; j >= 0 && keys[j] > key; j--) {
+                slots[j + 1] = slots[j];
+                keys[j + 1] = keys[j];
+            }
+            slots[j + 1] = slot;
+            keys[j + 1] = key;
+        }
+        return slots;
     }
 
 
     /*
      * @return list of all possible states, that the schedule of given flight, in all possible ways, can lead to
      */
-    List<FlightScheduleState> calcMoveAircraftStates(final FlightScheduleState state, final Flight flightToServe) {
+    List<FlightScheduleState> calcMoveAircraftStates(final FlightScheduleState state, final int flightIndex) {
+        Flight flightToServe = state.getFlight(flightIndex);
         List<FlightScheduleState> resultList = new LinkedList<>();
-        for(AircraftLocation location : state.getAircraftLocations()) {
-            if (location.getTime().before(flightToServe.getDepartureTime())) {
-                OptionalInt flightTimeToMove = state.findFlightDuration(location.getAirport(), flightToServe.getOrigin());
-                if (flightTimeToMove.isPresent()) {
-                    Calendar timeToBeReady = Calendar.getInstance();
-                    timeToBeReady.setTime(location.getTime());
-                    timeToBeReady.add(Calendar.MINUTE, flightTimeToMove.getAsInt());
-
-                    if (!timeToBeReady.getTime().after(flightToServe.getDepartureTime())) {
-                        resultList.add(moveAircraft(state, location, flightToServe.getOrigin(), timeToBeReady.getTime()));
+        for (int slot = 0; slot < state.getAircraftCount(); slot++) {
+            AircraftLocation location = state.getAircraftLocation(slot);
+            if (location.getTime() < flightToServe.getDepartureTime()) {
+                int flightTimeToMove = state.findFlightDuration(location.getAirport(), flightToServe.getOrigin());
+                if (flightTimeToMove != RouteTable.NO_ROUTE) {
+                    int timeToBeReady = location.getTime() + flightTimeToMove;
+
+                    if (timeToBeReady <= flightToServe.getDepartureTime()) {
+                        resultList.add(moveAircraft(state, slot, flightToServe.getOrigin(), timeToBeReady));
                     }
                 }
             }
@@ -116,71 +777,206 @@ public class FlightScheduleBuildingService {
      /*
      * Build the new state, adding the new schedule for the given flight by the given aircraft
      */
-    FlightScheduleState buildNewState(final FlightScheduleState oldState, final Flight flightToCover, final AircraftLocation matchingAircraft) {
-        List<FlightAssignment> newScheduledFlightsList = new LinkedList<>();
-        newScheduledFlightsList.addAll(oldState.getScheduledFlights());
-        newScheduledFlightsList.add(new FlightAssignment(flightToCover, matchingAircraft.getAircraft()));
+    FlightScheduleState buildNewState(final FlightScheduleState oldState, final int flightIndex, final int aircraftSlot) {
+        Flight flightToCover = oldState.getFlight(flightIndex);
+        Aircraft aircraft = oldState.getAircraftLocation(aircraftSlot).getAircraft();
 
+        BitSet newFlightsToCover = (BitSet) oldState.getFlightsToCoverSet().clone();
+        newFlightsToCover.clear(flightIndex);
 
-        List<AircraftLocation> newAircraftLocations = new LinkedList<>();
-        newAircraftLocations.addAll(oldState.getAircraftLocations());
-        newAircraftLocations.remove(matchingAircraft);
-        newAircraftLocations.add(new AircraftLocation(matchingAircraft.getAircraft(), flightToCover.getDestination(), flightToCover.getScheduledArrivalTime() ));
+        return oldState.next(new FlightAssignment(flightToCover, aircraft), flightIndex,
+                             aircraftSlot, new AircraftLocation(aircraft, flightToCover.getDestination(), flightToCover.getScheduledArrivalTime()),
+                             newFlightsToCover, oldState.getFlightsToCoverCount() - 1);
+    }
 
 
-        List<Flight> newFlightsToCover = new LinkedList<>();
-        newFlightsToCover.addAll(oldState.getFlightsToCover());
-        newFlightsToCover.remove(flightToCover);
+    /*
+     * Build the new state, transfering one of the planes from its curen location to new one, by the given time
+     */
+    FlightScheduleState moveAircraft(final FlightScheduleState oldState, final int aircraftSlot, Airport locationToMove, int flightEndTime) {
+        AircraftLocation aircraftToMove = oldState.getAircraftLocation(aircraftSlot);
 
-        return new FlightScheduleState(newScheduledFlightsList, newAircraftLocations, newFlightsToCover);
+        return oldState.next(new FlightAssignment(new Flight(aircraftToMove.getAirport(), locationToMove, aircraftToMove.getTime(), 0), aircraftToMove.getAircraft(), true),
+                             FlightScheduleState.NO_FLIGHT, aircraftSlot, new AircraftLocation(aircraftToMove.getAircraft(), locationToMove, flightEndTime),
+                             oldState.getFlightsToCoverSet(), oldState.getFlightsToCoverCount());
     }
 
 
     /*
-     * Build the new state, transfering one of the planes from its curen location to new one, by the given time
+     * @return slots of all the airplanes, that can serve the given flight
      */
-    FlightScheduleState moveAircraft(final FlightScheduleState oldState, final AircraftLocation aircraftToMove, Airport locationToMove, Date flightEndTime) {
-        List<FlightAssignment> newScheduledFlightsList = new LinkedList<>();
-        newScheduledFlightsList.addAll(oldState.getScheduledFlights());
-        newScheduledFlightsList.add(new FlightAssignment(new Flight(aircraftToMove.getAirport(), locationToMove, aircraftToMove.getTime(), 0), aircraftToMove.getAircraft()));
+    private int[] findMatchingAircrafts(final FlightScheduleState state, final int flightIndex) {
+        Flight flight = state.getFlight(flightIndex);
+        int[] result = new int[state.getAircraftCount()];
+        int count = 0;
+        for (int slot = 0; slot < state.getAircraftCount(); slot++) {
+            if (canServe(state.getAircraftLocation(slot), flight)) {
+                result[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /*
+     * @return the number of the airplanes, that can serve the given flight
+     */
+    private int countMatchingAircrafts(final FlightScheduleState state, final int flightIndex) {
+        Flight flight = state.getFlight(flightIndex);
+        int count = 0;
+        for (int slot = 0; slot < state.getAircraftCount(); slot++) {
+            if (canServe(state.getAircraftLocation(slot), flight)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean canServe(final AircraftLocation aircraftLocation, final Flight flight) {
+        return flight.getDepartureTime() >= aircraftLocation.getTime() && flight.getOrigin().equals(aircraftLocation.getAirport());
+    }
+
+    void setEngine(final SolverEngine engine) {
+        this.engine = engine;
+    }
+
+    void setFlightOrdering(final FlightOrdering flightOrdering) {
+        this.flightOrdering = flightOrdering;
+    }
+
+    void setAircraftOrdering(final AircraftOrdering aircraftOrdering) {
+        this.aircraftOrdering = aircraftOrdering;
+    }
+
+    void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    void setParallelDepth(final int parallelDepth) {
+        this.parallelDepth = parallelDepth;
+    }
+
+    void setFeasibilityCheck(final boolean feasibilityCheck) {
+        this.feasibilityCheck = feasibilityCheck;
+    }
 
-        List<AircraftLocation> newAircraftLocations = new LinkedList<>();
-        newAircraftLocations.addAll(oldState.getAircraftLocations());
-        newAircraftLocations.remove(aircraftToMove);
-        newAircraftLocations.add(new AircraftLocation(aircraftToMove.getAircraft(), locationToMove, flightEndTime ));
+    void setFailedStatesCacheSize(final int failedStatesCacheSize) {
+        this.failedStatesCacheSize = failedStatesCacheSize;
+    }
+
+    void setMaxNodes(final long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    void setTimeLimitMillis(final long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    void setMinimizeMoves(final boolean minimizeMoves) {
+        this.minimizeMoves = minimizeMoves;
+    }
+
+    void setPartialCoverage(final boolean partialCoverage) {
+        this.partialCoverage = partialCoverage;
+    }
 
-        List<Flight> newFlightsToCover = new LinkedList<>();
-        newFlightsToCover.addAll(oldState.getFlightsToCover());
+    void setPartialCoverageTimeLimitMillis(final long partialCoverageTimeLimitMillis) {
+        this.partialCoverageTimeLimitMillis = partialCoverageTimeLimitMillis;
+    }
 
-        return new FlightScheduleState(newScheduledFlightsList, newAircraftLocations, newFlightsToCover);
+    void setHorizonWindowMinutes(final int horizonWindowMinutes) {
+        this.horizonWindowMinutes = horizonWindowMinutes;
     }
 
+    void setHorizonLookaheadMinutes(final int horizonLookaheadMinutes) {
+        this.horizonLookaheadMinutes = horizonLookaheadMinutes;
+    }
 
     /*
-     * @return list of all the airplanes, that can serve the given flight
+     * @return all the settings of the search, the built schedule may depend on them
      */
-    private List<AircraftLocation> findMatchingAircrafts(final Flight flight, final List<AircraftLocation> homeBaseList) {
-        List<AircraftLocation> result = new LinkedList<>();
-        for (AircraftLocation aircraftLocation : homeBaseList) {
-            if  ( (! flight.getDepartureTime().before(aircraftLocation.getTime())) &&
-                    flight.getOrigin().equals(aircraftLocation.getAirport())) {
-                result.add(aircraftLocation);
-            }
-        }
-        return result;
+    public String getSettingsKey() {
+        return "engine=" + engine + ",flightOrdering=" + flightOrdering + ",aircraftOrdering=" + aircraftOrdering
+                + ",parallelism=" + parallelism + ",parallelDepth=" + parallelDepth + ",feasibilityCheck=" + feasibilityCheck
+                + ",failedStatesCacheSize=" + failedStatesCacheSize + ",maxNodes=" + maxNodes + ",timeLimitMillis=" + timeLimitMillis
+                + ",minimizeMoves=" + minimizeMoves + ",partialCoverage=" + partialCoverage
+                + ",partialCoverageTimeLimitMillis=" + partialCoverageTimeLimitMillis
+                + ",horizonWindowMinutes=" + horizonWindowMinutes + ",horizonLookaheadMinutes=" + horizonLookaheadMinutes;
     }
 
     /*
-     * Map the flights by the departure types
-     *
-     * @return the sorted map, mapping the departure time to the list of flights, departing at that time.
-     * Map is sorted by departure time, the earliest flights are first.
+     * @return the statistics of the latest search run
+     */
+    public SearchStatistics getLastRunStatistics() {
+        return lastRunStatistics;
+    }
+
+    /*
+     * @return the cache of the known failed states of the latest search run, with its hit/miss counters
+     */
+    public FailedStatesCache getFailedStatesCache() {
+        return failedStatesCache;
+    }
+
+
+    /*
+     * Fork-join task, exploring the subtree of the given state.
+     * Up to the configured depth the children states are forked as separate tasks, below it the subtree is explored sequentially.
      */
-    static private TreeMap<Date, List<Flight>> mapFlightsByDepartureTime(final List<Flight> flightsList) {
-        TreeMap<Date, List<Flight>> resultMap = new TreeMap<>();
-        resultMap.putAll(flightsList.stream().collect(groupingBy(Flight::getDepartureTime)));
+    class ParallelSearchTask extends RecursiveTask<FlightScheduleState> {
+        private static final long serialVersionUID = 1L;
+
+        private final FlightScheduleState state;
+
+        private final int depth;
+
+        private final SearchContext context;
+
+        ParallelSearchTask(final FlightScheduleState state, final int depth, final SearchContext context) {
+            this.state = state;
+            this.depth = depth;
+            this.context = context;
+        }
 
-        return resultMap;
+        @Override
+        protected FlightScheduleState compute() {
+            if (context.isStopped()) {
+                return null;
+            }
+
+            if (depth >= parallelDepth || state.isComplete()) {
+                FlightScheduleState solution = buildFlilghtAssignments(state, context);
+                if (solution != null) {
+                    context.publishSolution(solution);
+                }
+                return solution;
+            }
+
+            if (!context.countNode(state.getDepth()) || !context.isFeasible(state)) {
+                return null;
+            }
+
+            SearchStatistics statistics = context.getStatistics();
+            statistics.countExpanded(state.getDepth());
+            List<ParallelSearchTask> subtasks = new LinkedList<>();
+            int currFlight = selectFlight(state);
+            for (int match : orderAircrafts(state, currFlight, findMatchingAircrafts(state, currFlight), context.getHistory())) {
+                subtasks.add(new ParallelSearchTask(buildNewState(state, currFlight, match), depth + 1, context));
+            }
+            int directCount = subtasks.size();
+            statistics.countChildren(state.getDepth(), directCount, false);
+            for (FlightScheduleState artificialState : calcMoveAircraftStates(state, currFlight)) {
+                for (int match : orderAircrafts(artificialState, currFlight, findMatchingAircrafts(artificialState, currFlight), context.getHistory())) {
+                    subtasks.add(new ParallelSearchTask(buildNewState(artificialState, currFlight, match), depth + 1, context));
+                }
+            }
+            statistics.countChildren(state.getDepth(), subtasks.size() - directCount, true);
+            invokeAll(subtasks);
+
+            if (!context.isStopped()) {
+                statistics.countBacktrack();
+            }
+            return context.getSolution();
+        }
     }
 
 
@@ -191,62 +987,196 @@ public class FlightScheduleBuildingService {
      *    - list of the flights to be scheduled yet.
      *
      *  In the initial state, the scheduled flights list is empty.
-     *  If the list of flights to cover is empty, the schedule is ready
+     *  If the list of flights to cover is empty, the schedule is ready. When the flights may be left uncovered,
+     *  they are removed from the flights to cover without the assignment and only counted.
      *
      *  This class is immutable, the changes in the stae (like scheduling the flight) lead to creation of the new state.
+     *  Creating the new state does not copy the whole state: the scheduled flights are the list, shared with the previous state,
+     *  the aircraft locations are the small array with one slot per aircraft and the flights to cover are the bit set
+     *  over the flights of the problem, sorted by the departure time.
      */
     class FlightScheduleState {
-        private final List<FlightAssignment> scheduledFlights;
+        static final int NO_FLIGHT = -1;
+
+        private final ScheduleProblem problem;
+
+        private final ConsList<FlightAssignment> scheduledFlights;
+
+        private final AircraftLocation[] aircraftLocations;
+
+        private final BitSet flightsToCover;
 
-        private final List<AircraftLocation> aircraftLocations;
+        private final int flightsToCoverCount;
 
-        private final  List<Flight> flightsToCover;
+        private final int movesCount;
 
-        public FlightScheduleState(final List<FlightAssignment> scheduledFlights, final List<AircraftLocation> aircraftLocations,  List<Flight> flightsToCover) {
+        private final int uncoveredFlightsCount;
+
+        /*
+         * The flight and the aircraft of the assignment, that led to this state, NO_FLIGHT for the initial state and the moves
+         */
+        private final int lastFlightIndex;
+
+        private final int lastAircraftSlot;
+
+        /*
+         * Build the initial state. The aircrafts, that have no time set yet (still in the home base),
+         * are considered ready at the departure time of the first flight.
+         */
+        public FlightScheduleState(final ScheduleProblem problem, final List<AircraftLocation> homeBaseList) {
+            this.problem = problem;
+            this.scheduledFlights = ConsList.empty();
+
+            int firstDepartureTime = (problem.getFlightsCount() > 0) ? problem.getDepartureTime(0) : AircraftLocation.TIME_NOT_SET;
+            this.aircraftLocations = new AircraftLocation[homeBaseList.size()];
+            int slot = 0;
+            for (AircraftLocation location : homeBaseList) {
+                aircraftLocations[slot++] = location.hasTime() ? location : new AircraftLocation(location.getAircraft(), location.getAirport(), firstDepartureTime);
+            }
+
+            this.flightsToCover = new BitSet(problem.getFlightsCount());
+            this.flightsToCover.set(0, problem.getFlightsCount());
+            this.flightsToCoverCount = problem.getFlightsCount();
+            this.movesCount = 0;
+            this.uncoveredFlightsCount = 0;
+            this.lastFlightIndex = NO_FLIGHT;
+            this.lastAircraftSlot = NO_FLIGHT;
+        }
+
+        private FlightScheduleState(final ScheduleProblem problem, final ConsList<FlightAssignment> scheduledFlights, final AircraftLocation[] aircraftLocations,
+                                    final BitSet flightsToCover, final int flightsToCoverCount, final int movesCount, final int uncoveredFlightsCount,
+                                    final int lastFlightIndex, final int lastAircraftSlot) {
+            this.problem = problem;
             this.scheduledFlights = scheduledFlights;
             this.aircraftLocations = aircraftLocations;
             this.flightsToCover = flightsToCover;
+            this.flightsToCoverCount = flightsToCoverCount;
+            this.movesCount = movesCount;
+            this.uncoveredFlightsCount = uncoveredFlightsCount;
+            this.lastFlightIndex = lastFlightIndex;
+            this.lastAircraftSlot = lastAircraftSlot;
+        }
+
+        /*
+         * @return the new state, with the given assignment of the given flight (NO_FLIGHT for the move) added and the given aircraft at its new location
+         */
+        FlightScheduleState next(final FlightAssignment assignment, final int flightIndex, final int aircraftSlot, final AircraftLocation newLocation,
+                                 final BitSet newFlightsToCover, final int newFlightsToCoverCount) {
+            AircraftLocation[] newAircraftLocations = aircraftLocations.clone();
+            newAircraftLocations[aircraftSlot] = newLocation;
+
+            return new FlightScheduleState(problem, scheduledFlights.prepend(assignment), newAircraftLocations, newFlightsToCover, newFlightsToCoverCount,
+                                           assignment.isMove() ? movesCount + 1 : movesCount, uncoveredFlightsCount, flightIndex, aircraftSlot);
         }
 
+        /*
+         * @return the new state, with the given flight left uncovered. The aircrafts stay where they are.
+         */
+        FlightScheduleState leaveUncovered(final int flightIndex) {
+            BitSet newFlightsToCover = (BitSet) flightsToCover.clone();
+            newFlightsToCover.clear(flightIndex);
+
+            return new FlightScheduleState(problem, scheduledFlights, aircraftLocations, newFlightsToCover, flightsToCoverCount - 1,
+                                           movesCount, uncoveredFlightsCount + 1, NO_FLIGHT, NO_FLIGHT);
+        }
+
+        /*
+         * @return all the scheduled flights, in the order they were scheduled
+         */
         public List<FlightAssignment> getScheduledFlights() {
-            return scheduledFlights;
+            return scheduledFlights.toList();
+        }
+
+        public int getScheduledFlightsCount() {
+            return scheduledFlights.size();
         }
 
         public List<AircraftLocation> getAircraftLocations() {
-            return aircraftLocations;
+            return Collections.unmodifiableList(Arrays.asList(aircraftLocations));
+        }
+
+        AircraftLocation getAircraftLocation(final int slot) {
+            return aircraftLocations[slot];
         }
 
+        int getAircraftCount() {
+            return aircraftLocations.length;
+        }
+
+        /*
+         * @return the flights to be scheduled yet, sorted by the departure time
+         */
         public List<Flight> getFlightsToCover() {
+            List<Flight> result = new ArrayList<>(flightsToCoverCount);
+            for (int i = flightsToCover.nextSetBit(0); i >= 0; i = flightsToCover.nextSetBit(i + 1)) {
+                result.add(problem.getFlight(i));
+            }
+            return result;
+        }
+
+        BitSet getFlightsToCoverSet() {
             return flightsToCover;
         }
 
-        OptionalInt findFlightDuration(final Airport origin, final Airport destination) {
-            OptionalInt result = calcFlightDurationOneWay(origin, destination);
-            if (result.isPresent()) {
-                return result;
-            } else {
-                return calcFlightDurationOneWay(destination, origin);
-            }
+        public int getFlightsToCoverCount() {
+            return flightsToCoverCount;
         }
 
+        /*
+         * @return the number of the moves of the aircrafts, scheduled so far
+         */
+        public int getMovesCount() {
+            return movesCount;
+        }
 
-        private OptionalInt calcFlightDurationOneWay(final Airport origin, final Airport destination) {
-            OptionalInt resultInFlightsToCover =
-                    flightsToCover.parallelStream()
-                                   .filter( f -> f.getOrigin().equals(origin) && f.getDestination()
-                                   .equals(destination))
-                                   .mapToInt( f -> f.getFlightLength())
-                                   .max();
+        /*
+         * @return the number of the flights, left uncovered so far
+         */
+        public int getUncoveredFlightsCount() {
+            return uncoveredFlightsCount;
+        }
 
-            if (resultInFlightsToCover.isPresent()) {
-                return resultInFlightsToCover;
-            } else {
-                return scheduledFlights.parallelStream()
-                                        .map(f -> f.getFlight())
-                                        .filter( f -> f.getOrigin().equals(origin) && f.getDestination().equals(destination))
-                                        .mapToInt( f -> f.getFlightLength())
-                                        .max();
-            }
+        int getLastFlightIndex() {
+            return lastFlightIndex;
+        }
+
+        int getLastAircraftSlot() {
+            return lastAircraftSlot;
+        }
+
+        public boolean isComplete() {
+            return flightsToCoverCount == 0;
+        }
+
+        /*
+         * @return the depth of the state in the search tree, that is the number of the covered (or left uncovered) flights
+         */
+        int getDepth() {
+            return problem.getFlightsCount() - flightsToCoverCount;
+        }
+
+        ScheduleProblem getProblem() {
+            return problem;
+        }
+
+        Flight getFlight(final int index) {
+            return problem.getFlight(index);
+        }
+
+        int getDepartureTime(final int index) {
+            return problem.getDepartureTime(index);
+        }
+
+        StateFingerprint fingerprint() {
+            return new StateFingerprint(aircraftLocations, flightsToCover);
+        }
+
+        /*
+         * @return duration of the flight between the airports in minutes, or RouteTable.NO_ROUTE, if no such flight is known.
+         * The durations come from the route table of the problem, so they are the same in all the states.
+         */
+        int findFlightDuration(final Airport origin, final Airport destination) {
+            return problem.getRoutes().getFlightDuration(origin, destination);
         }
 
     }
@@ -7,7 +7,9 @@ import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
 import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
 import org.ulitzky.flights.model.FlightAssignment;
 
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by lulitzky on 19.04.18.
@@ -32,4 +34,11 @@ public interface FlightsDataMapper {
     })
     OperatingInstructionResource mapToOperatingInstructionResource(final FlightAssignment assignment);
     List<OperatingInstructionResource> mapToOperatingInstructionResources(final List<FlightAssignment> assignments);
+
+    /*
+     * The model keeps the times as minutes since the epoch, the resources expose them as dates
+     */
+    default Date mapToDate(final int time) {
+        return new Date(TimeUnit.MINUTES.toMillis(time));
+    }
 }
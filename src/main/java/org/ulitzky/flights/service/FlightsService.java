@@ -1,36 +1,82 @@
 package org.ulitzky.flights.service;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
 import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
 import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
 import org.ulitzky.flights.model.Flight;
 import org.ulitzky.flights.model.FlightAssignment;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.validation.constraints.NotNull;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.Charset;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 
 /**
  * Created by lulitzky on 19.04.18.
+ *
+ * The schedule is built in the background on the application start, the queries fail with ScheduleNotReadyException until it is ready.
+ * The input files on the file system are watched and the schedule is rebuilt in the background, when they change.
+ * Every built schedule is published as the new immutable snapshot (ScheduleReadModel), replacing the previous one at once,
+ * so the queries never wait for the build and never see a half-built schedule. The failed rebuild keeps the previous snapshot.
+ * With the partial coverage configured (see FlightScheduleBuildingService), the flights, that cannot be covered, do not fail the build:
+ * every better partial schedule is published, as soon as it is found, together with the flights it leaves uncovered.
+ * With the snapshot directory configured, the built schedule is persisted and loaded on the next start instead of the build,
+ * if the inputs and the solver settings did not change.
+ *
+ * The flights can be added, cancelled and retimed in the built schedule, it is repaired then, instead of being built again
+ * (see FlightScheduleBuildingService.repairFlightAssignments). The builds and the repairs run one after another.
  */
 @Service
+@Slf4j
 public class FlightsService {
 
-   private List<FlightAssignment> flightSchedule;
+    public enum BuildState {
+        NOT_STARTED, BUILDING, READY, FAILED
+    }
+
+   private final AtomicReference<ScheduleReadModel> snapshot = new AtomicReference<>();
+
+   /*
+    * The version of the latest built schedule. It is based on the clock, so the versions stay unique across the restarts.
+    */
+   private static final AtomicLong lastVersion = new AtomicLong();
+
+   private volatile BuildState buildState = BuildState.NOT_STARTED;
+
+   private volatile String buildError;
+
+   private volatile Future<?> buildTask;
+
+   private InputFileWatcher inputWatcher;
+
+   private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+       Thread thread = new Thread(runnable, "schedule-builder");
+       thread.setDaemon(true);
+       return thread;
+   });
 
     @Value("${input.homebase:/homebases.csv}")
     private String homebaseFilename;
@@ -38,56 +84,277 @@ public class FlightsService {
     @Value("${input.flights:/flights.csv}")
     private String flightsFilename;
 
+    /*
+     * Whether to skip the invalid records of the input files, instead of failing
+     */
+    @Value("${input.skip-invalid-records:false}")
+    private boolean skipInvalidRecords = false;
+
+    /*
+     * Whether to rebuild the schedule, when the input files on the file system change
+     */
+    @Value("${input.watch:true}")
+    private boolean watchInput = true;
+
+    /*
+     * The rebuild starts, when the changed input files are not modified for this period
+     */
+    @Value("${input.watch-quiet-period-ms:500}")
+    private long watchQuietPeriodMillis = 500;
+
+    /*
+     * The directory, where the built schedule is persisted and loaded from on the start, when the inputs and the solver settings
+     * did not change (see ScheduleSnapshotStore). Empty disables the snapshot.
+     */
+    @Value("${schedule.snapshot-dir:}")
+    private String snapshotDirectory = "";
+
    @Autowired
    private FlightsDataMapper dataMapper;
 
    @Autowired
    private FlightScheduleBuildingService schedulerBuilder;
 
+    /*
+     * Start building the schedule in the background, so the application does not wait for the search to start up,
+     * and watching the input files for the changes
+     */
     @PostConstruct
+    public void startScheduleBuild() throws IOException {
+        reloadFlightSchedule();
+
+        List<Path> inputFiles = new ArrayList<>();
+        CsvInputLoader.getFilePath(homebaseFilename).ifPresent(inputFiles::add);
+        CsvInputLoader.getFilePath(flightsFilename).ifPresent(inputFiles::add);
+        if (watchInput && !inputFiles.isEmpty()) {
+            inputWatcher = new InputFileWatcher(inputFiles, watchQuietPeriodMillis, () -> {
+                log.info("The input files changed, rebuilding the flight schedule");
+                reloadFlightSchedule();
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stopScheduleBuild() throws IOException {
+        if (inputWatcher != null) {
+            inputWatcher.close();
+        }
+        buildExecutor.shutdownNow();
+    }
+
+    /*
+     * Rebuild the schedule in the background, the current one is served until the new one is ready.
+     * The builds run one after another.
+     *
+     * @return the task of the build
+     */
+    public Future<?> reloadFlightSchedule() {
+        buildTask = buildExecutor.submit(() -> {
+            try {
+                buildFlightSchedule();
+            } catch (Exception e) {
+                log.error("Cannot build the flight schedule", e);
+            }
+        });
+        return buildTask;
+    }
+
     public void buildFlightSchedule() throws IOException {
-        Optional<List<FlightAssignment>> scheduleOption = schedulerBuilder.buildFlilghtAssignments(loadHomeBase(), loadFlightSchedule());
+        buildState = BuildState.BUILDING;
+        try {
+            List<AircraftLocation> homeBases = loadHomeBase();
+            List<Flight> flights = loadFlightSchedule();
+            Optional<List<FlightAssignment>> scheduleOption = loadOrBuildFlightAssignments(homeBases, flights);
 
-        if (scheduleOption.isPresent()) {
-            flightSchedule = scheduleOption.get();
-        } else {
-            throw new RuntimeException("Cannot build valid schedule");
+            if (scheduleOption.isPresent()) {
+                List<Flight> uncoveredFlights = findUncoveredFlights(flights, scheduleOption.get());
+                if (!uncoveredFlights.isEmpty()) {
+                    log.warn("The flight schedule leaves {} flights uncovered: {}", uncoveredFlights.size(), uncoveredFlights);
+                }
+                publishSchedule(homeBases, scheduleOption.get(), uncoveredFlights);
+            } else {
+                throw new RuntimeException("Cannot build valid schedule");
+            }
+        } catch (IOException | RuntimeException e) {
+            buildError = e.getMessage();
+            buildState = BuildState.FAILED;
+            throw e;
         }
     }
 
 
 
-    List<AircraftLocation> loadHomeBase() throws IOException {
-        InputStream dataInputStream = getClass().getResourceAsStream(homebaseFilename);
-        CSVParser parser = CSVParser.parse(dataInputStream, Charset.defaultCharset(), CSVFormat.DEFAULT);
+    /*
+     * @return the schedule from the snapshot of the same inputs, or the newly built one, that is persisted then
+     */
+    private Optional<List<FlightAssignment>> loadOrBuildFlightAssignments(final List<AircraftLocation> homeBases, final List<Flight> flights) {
+        ScheduleSnapshotStore snapshotStore = snapshotDirectory.isEmpty() ? null : new ScheduleSnapshotStore(Paths.get(snapshotDirectory));
+        byte[] inputHash = null;
+        if (snapshotStore != null) {
+            long start = System.nanoTime();
+            inputHash = ScheduleSnapshotStore.hashInputs(homeBases, flights, schedulerBuilder.getSettingsKey());
+            Optional<List<FlightAssignment>> snapshot = snapshotStore.load(inputHash, homeBases, flights);
+            if (snapshot.isPresent()) {
+                log.info("Loaded the flight schedule of {} assignments from the snapshot {} in {} ms", snapshot.get().size(),
+                         snapshotStore.getFile(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                return snapshot;
+            }
+        }
+
+        Optional<List<FlightAssignment>> result = schedulerBuilder.buildFlilghtAssignments(homeBases, flights,
+                partialSchedule -> publishSchedule(homeBases, partialSchedule, findUncoveredFlights(flights, partialSchedule)));
+        if (snapshotStore != null && result.isPresent()) {
+            snapshotStore.save(inputHash, homeBases, flights, result.get());
+        }
+        return result;
+    }
 
-        List<AircraftLocation> homeBaseList = parser.getRecords().stream().map(r -> new AircraftLocation(r)).collect(Collectors.toList());
+    /*
+     * @return the flights, that are not assigned to any aircraft by the schedule, in the order of the departure
+     */
+    static List<Flight> findUncoveredFlights(final List<Flight> flights, final List<FlightAssignment> schedule) {
+        Set<Flight> coveredFlights = Collections.newSetFromMap(new IdentityHashMap<>());
+        schedule.forEach(assignment -> coveredFlights.add(assignment.getFlight()));
 
-        return homeBaseList;
+        List<Flight> result = new ArrayList<>();
+        for (Flight flight : flights) {
+            if (!coveredFlights.contains(flight)) {
+                result.add(flight);
+            }
+        }
+        result.sort(Comparator.comparingInt(Flight::getDepartureTime));
+        return result;
     }
 
-     List<Flight> loadFlightSchedule() throws IOException {
-        InputStream dataInputStream = getClass().getResourceAsStream(flightsFilename);
-        CSVParser parser = CSVParser.parse(dataInputStream, Charset.defaultCharset(), CSVFormat.DEFAULT);
+    /*
+     * Add the flight to the schedule
+     *
+     * @return the version of the repaired schedule
+     * @throws ScheduleRepairException, if the flight cannot be covered
+     */
+    public long addFlight(final Flight flight) {
+        return repairFlightSchedule(schedule -> Collections.emptyList(), schedule -> Collections.singletonList(flight));
+    }
+
+    /*
+     * Cancel the flight, given by its route and departure time
+     *
+     * @return the version of the repaired schedule
+     * @throws FlightNotFoundException, if there is no such flight in the schedule
+     */
+    public long cancelFlight(final String origin, final String destination, final int departureTime) {
+        return repairFlightSchedule(schedule -> Collections.singletonList(findFlight(schedule, origin, destination, departureTime)),
+                                    schedule -> Collections.emptyList());
+    }
+
+    /*
+     * Move the departure of the flight, given by its route and departure time, to the new time
+     *
+     * @return the version of the repaired schedule
+     * @throws FlightNotFoundException, if there is no such flight in the schedule
+     * @throws ScheduleRepairException, if the flight cannot be covered at the new time
+     */
+    public long retimeFlight(final String origin, final String destination, final int departureTime, final int newDepartureTime) {
+        return repairFlightSchedule(schedule -> Collections.singletonList(findFlight(schedule, origin, destination, departureTime)),
+                                    schedule -> {
+                                        Flight flight = findFlight(schedule, origin, destination, departureTime);
+                                        return Collections.singletonList(new Flight(flight.getOrigin(), flight.getDestination(),
+                                                                                    newDepartureTime, flight.getFlightLength()));
+                                    });
+    }
+
+    /*
+     * Repair the current schedule on the build thread, so the repairs do not overlap each other or the build
+     */
+    private long repairFlightSchedule(final Function<ScheduleReadModel, List<Flight>> cancelledFlights,
+                                      final Function<ScheduleReadModel, List<Flight>> addedFlights) {
+        // Fail at once, if there is no schedule to repair yet, instead of waiting for the build
+        getReadModel();
+        Future<Long> repair = buildExecutor.submit(() -> {
+            ScheduleReadModel schedule = getReadModel();
+            List<Flight> cancelled = cancelledFlights.apply(schedule);
+            List<Flight> added = addedFlights.apply(schedule);
+
+            Optional<List<FlightAssignment>> repaired = schedulerBuilder.repairFlightAssignments(schedule.getHomeBases(), schedule.getFlightAssignments(),
+                                                                                                 cancelled, added);
+            if (!repaired.isPresent()) {
+                throw new ScheduleRepairException("Cannot repair the schedule after cancelling " + cancelled + " and adding " + added);
+            }
+            return publishSchedule(schedule.getHomeBases(), repaired.get(), schedule.getUncoveredFlights()).getVersion();
+        });
+
+        try {
+            return repair.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cannot repair the schedule", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while repairing the schedule", e);
+        }
+    }
 
-        List<Flight> flightsList = parser.getRecords().stream().map(r -> new Flight(r)).collect(Collectors.toList());
+    private static Flight findFlight(final ScheduleReadModel schedule, final String origin, final String destination, final int departureTime) {
+        Airport originAirport = new Airport(origin);
+        Airport destinationAirport = new Airport(destination);
+        for (FlightAssignment assignment : schedule.getFlightAssignments()) {
+            Flight flight = assignment.getFlight();
+            if (!assignment.isMove() && flight.getDepartureTime() == departureTime
+                    && flight.getOrigin().equals(originAirport) && flight.getDestination().equals(destinationAirport)) {
+                return flight;
+            }
+        }
+        throw new FlightNotFoundException("No flight from " + origin + " to " + destination + " at " + Flight.formatTime(departureTime));
+    }
+
+    List<AircraftLocation> loadHomeBase() throws IOException {
+        List<AircraftLocation> homeBaseList = new ArrayList<>();
+        checkInput(CsvInputLoader.load(homebaseFilename, AircraftLocation::new, homeBaseList::add));
+        return homeBaseList;
+    }
 
+     List<Flight> loadFlightSchedule() throws IOException {
+        List<Flight> flightsList = new ArrayList<>();
+        checkInput(CsvInputLoader.load(flightsFilename, Flight::new, flightsList::add));
         return flightsList;
     }
 
-    public List<FlightAssignmentResource> getFlightPlan(final String origin) {
-        List<FlightAssignment> filteredSchedule = new LinkedList<>();
-        if (origin == null) {
-            filteredSchedule.addAll(flightSchedule);
+    /*
+     * The invalid records fail the input, unless they are configured to be skipped
+     */
+    private void checkInput(final CsvInputLoader.Report report) {
+        if (!report.hasErrors()) {
+            log.info("Input {}", report);
+        } else if (skipInvalidRecords) {
+            log.warn("Input with the invalid records skipped {}", report);
         } else {
-            filteredSchedule = flightSchedule.stream().filter( item -> origin.equalsIgnoreCase(item.getFlight().getOrigin().getCode()) ).collect(Collectors.toList());
+            throw new IllegalArgumentException("Invalid input " + report);
         }
-        return  dataMapper.mapToFlightPlan(filteredSchedule);
     }
 
+    /*
+     * @return the flights from the given airport (case insensitive), or all the flights, if no airport is given.
+     * The list is immutable and shared by all the callers.
+     */
+    public List<FlightAssignmentResource> getFlightPlan(final String origin) {
+        ScheduleReadModel schedule = getReadModel();
+        return (origin == null) ? schedule.getFlightPlan() : schedule.getFlightPlan(origin);
+    }
+
+    /*
+     * @return the flights, that the current schedule leaves uncovered, empty for the complete schedule
+     */
+    public List<FlightAssignmentResource> getUncoveredFlights() {
+        return getReadModel().getUncoveredFlightPlan();
+    }
+
+    /*
+     * @return the flights of the given aircraft. The list is immutable and shared by all the callers.
+     */
     public List<OperatingInstructionResource> getOperationsPlan(final @NotNull String registration) {
-        List<FlightAssignment> flightsForAircraft = flightSchedule.stream().filter( item -> registration.equals(item.getAircraft().getRegistration())).collect(Collectors.toList());
-        return dataMapper.mapToOperatingInstructionResources(flightsForAircraft);
+        return getReadModel().getOperationsPlan(registration);
     }
 
 
@@ -99,7 +366,88 @@ public class FlightsService {
         this.flightsFilename = flightsFilename;
     }
 
+    void setSkipInvalidRecords(final boolean skipInvalidRecords) {
+        this.skipInvalidRecords = skipInvalidRecords;
+    }
+
+    void setDataMapper(final FlightsDataMapper dataMapper) {
+        this.dataMapper = dataMapper;
+    }
+
+    void setSchedulerBuilder(final FlightScheduleBuildingService schedulerBuilder) {
+        this.schedulerBuilder = schedulerBuilder;
+    }
+
+    void setWatchInput(final boolean watchInput) {
+        this.watchInput = watchInput;
+    }
+
+    void setWatchQuietPeriodMillis(final long watchQuietPeriodMillis) {
+        this.watchQuietPeriodMillis = watchQuietPeriodMillis;
+    }
+
+    void setSnapshotDirectory(final String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /*
+     * Set the schedule, built elsewhere. Only the aircrafts with the flights are known to the repairs of this schedule.
+     */
+    void setFlightSchedule(final List<FlightAssignment> flightSchedule) {
+        publishSchedule(Collections.emptyList(), flightSchedule, Collections.emptyList());
+    }
+
+    /*
+     * Publish the new snapshot of the schedule, it is fully built before it gets visible to the queries
+     */
+    private ScheduleReadModel publishSchedule(final List<AircraftLocation> homeBases, final List<FlightAssignment> flightSchedule,
+                                              final List<Flight> uncoveredFlights) {
+        ScheduleReadModel result = new ScheduleReadModel(lastVersion.updateAndGet(v -> Math.max(v + 1, System.currentTimeMillis())),
+                                                         homeBases, flightSchedule, uncoveredFlights, dataMapper);
+        snapshot.set(result);
+        this.buildState = BuildState.READY;
+        this.buildError = null;
+        return result;
+    }
+
+    /*
+     * @return the current schedule, as it is queried by the API
+     */
+    public ScheduleReadModel getReadModel() {
+        ScheduleReadModel result = snapshot.get();
+        if (result == null) {
+            throw new ScheduleNotReadyException(buildState);
+        }
+        return result;
+    }
+
+    /*
+     * @return true, if the schedule was built and can be queried
+     */
+    public boolean isScheduleReady() {
+        return snapshot.get() != null;
+    }
+
+    public BuildState getBuildState() {
+        return buildState;
+    }
+
+    /*
+     * @return the reason of the latest failed build
+     */
+    public String getBuildError() {
+        return buildError;
+    }
+
+    /*
+     * @return the task of the latest schedule build
+     */
+    Future<?> getBuildTask() {
+        return buildTask;
+    }
+
     List<FlightAssignment> getFlightSchedule() {
-        return flightSchedule;
+        ScheduleReadModel current = snapshot.get();
+        return (current == null) ? null : current.getFlightAssignments();
     }
 }
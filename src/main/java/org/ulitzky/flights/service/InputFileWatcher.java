@@ -0,0 +1,97 @@
+package org.ulitzky.flights.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the input files for the changes and calls back on the background thread, when any of them is created or modified.
+ *
+ * The files are usually written in several steps (or several files one after another), so the changes are reported
+ * once the files are quiet for the given period, and not on every event.
+ */
+@Slf4j
+class InputFileWatcher implements Closeable {
+
+    private final WatchService watchService;
+
+    /*
+     * The names of the watched files per watched directory
+     */
+    private final Map<Path, Set<Path>> watchedFiles = new HashMap<>();
+
+    private final long quietPeriodMillis;
+
+    private final Runnable onChange;
+
+    private final Thread thread;
+
+    InputFileWatcher(final Collection<Path> files, final long quietPeriodMillis, final Runnable onChange) throws IOException {
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            for (Path file : files) {
+                Path absoluteFile = file.toAbsolutePath();
+                Path directory = absoluteFile.getParent();
+                if (!watchedFiles.containsKey(directory)) {
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+                watchedFiles.computeIfAbsent(directory, k -> new HashSet<>()).add(absoluteFile.getFileName());
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread(this::watch, "input-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching the input files {}", files);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (isInputChanged(watchService.take())) {
+                    // Wait until the files are quiet, collecting the rest of the events
+                    WatchKey key;
+                    while ((key = watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS)) != null) {
+                        isInputChanged(key);
+                    }
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Stopped watching the input files");
+        } catch (RuntimeException e) {
+            log.error("Stopped watching the input files", e);
+        }
+    }
+
+    /*
+     * @return true, if any of the events of the key is about the watched file
+     */
+    private boolean isInputChanged(final WatchKey key) {
+        Set<Path> files = watchedFiles.getOrDefault((Path) key.watchable(), Collections.emptySet());
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || files.contains((Path) event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+    }
+}
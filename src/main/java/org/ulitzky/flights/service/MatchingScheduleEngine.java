@@ -0,0 +1,359 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.util.*;
+
+/**
+ * Builds the schedule without moving the aircrafts, as the maximum bipartite matching (Hopcroft-Karp).
+ *
+ * Every flight has to be preceded either by the aircraft, starting at its origin (the home base constraint),
+ * or by another flight, arriving at its origin before its departure. The left side of the graph are the aircrafts
+ * and the flights as predecessors, the right side are the flights as successors. Every left node can precede
+ * at most one flight, so the matching, covering all the flights, splits them into the chains, each starting with the aircraft -
+ * that is exactly the rotation of that aircraft. If there is no such matching, no schedule without aircraft moves exists.
+ *
+ * The matching takes O(E * sqrt(V)) time, E is the number of the possible connections.
+ *
+ * With the aircraft moves allowed the aircraft or the flight can also precede the flight from another airport, if it
+ * can get there in time by the shortest way. This relaxes the moves (an aircraft may be moved more than once and from any time on),
+ * so the matching does not build the schedule, but proves there is none, if it does not cover all the flights.
+ * The relaxed graph links the aircraft or the flight to every later flight, it can reach, so it grows with the square
+ * of the flights. It cannot be pruned without losing the proof, so above the limit of the edges it is not built at all
+ * and the flights are not rejected by it - the search decides then.
+ */
+class MatchingScheduleEngine {
+
+    private static final int NONE = -1;
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    /*
+     * 40 MB of the edges
+     */
+    static final long MAX_RELAXED_EDGES = 10_000_000;
+
+    private final ScheduleProblem problem;
+
+    private final List<AircraftLocation> homeBaseList;
+
+    private final int aircraftsCount;
+
+    private final int flightsCount;
+
+    private final boolean withMoves;
+
+    private final long maxRelaxedEdges;
+
+    // The departing flights grouped by the origin: departures[departuresStart[a]] .. departures[departuresStart[a + 1] - 1],
+    // sorted by the departure time
+    private int[] departuresStart;
+
+    private int[] departures;
+
+    private int[] departureTimes;
+
+    // The graph in the compressed form: edges of the left node u are adjTargets[adjStart[u]] .. adjTargets[adjStart[u + 1] - 1]
+    private int[] adjStart;
+
+    private int[] adjTargets;
+
+    private int[] matchLeft;
+
+    private int[] matchRight;
+
+    private int[] dist;
+
+    MatchingScheduleEngine(final ScheduleProblem problem, final List<AircraftLocation> homeBaseList) {
+        this(problem, homeBaseList, false);
+    }
+
+    MatchingScheduleEngine(final ScheduleProblem problem, final List<AircraftLocation> homeBaseList, final boolean withMoves) {
+        this(problem, homeBaseList, withMoves, MAX_RELAXED_EDGES);
+    }
+
+    MatchingScheduleEngine(final ScheduleProblem problem, final List<AircraftLocation> homeBaseList, final boolean withMoves,
+                           final long maxRelaxedEdges) {
+        this.problem = problem;
+        this.homeBaseList = new ArrayList<>(homeBaseList);
+        this.aircraftsCount = homeBaseList.size();
+        this.flightsCount = problem.getFlightsCount();
+        this.withMoves = withMoves;
+        this.maxRelaxedEdges = maxRelaxedEdges;
+    }
+
+    /*
+     * @return false, if the flights can certainly not be covered (by the relaxed moves, if they are allowed),
+     * true also, if the relaxed graph would have more edges, than the limit
+     */
+    boolean canCoverAllFlights() {
+        if (!buildGraph()) {
+            return true;
+        }
+        return maximumMatching() == flightsCount;
+    }
+
+    /*
+     * @return the flight assignments, sorted by the departure time, if all the flights can be covered without moving the aircrafts
+     * @return Optional.empty(), if there is no such schedule
+     */
+    Optional<List<FlightAssignment>> buildFlightAssignments() {
+        if (withMoves) {
+            throw new IllegalStateException("The relaxed moves do not build the schedule");
+        }
+        buildGraph();
+
+        int matched = maximumMatching();
+        if (matched < flightsCount) {
+            return Optional.empty();
+        }
+
+        // Follow the chain of every aircraft: the aircraft, its first flight, the flight after it, etc.
+        AircraftLocation[] operatedBy = new AircraftLocation[flightsCount];
+        for (int aircraft = 0; aircraft < aircraftsCount; aircraft++) {
+            for (int flight = matchLeft[aircraft]; flight != NONE; flight = matchLeft[aircraftsCount + flight]) {
+                operatedBy[flight] = homeBaseList.get(aircraft);
+            }
+        }
+
+        List<FlightAssignment> result = new ArrayList<>(flightsCount);
+        for (int flight = 0; flight < flightsCount; flight++) {
+            result.add(new FlightAssignment(problem.getFlight(flight), operatedBy[flight].getAircraft()));
+        }
+        return Optional.of(result);
+    }
+
+    /*
+     * The edges: the aircraft to every flight from its home base, departing after it is ready;
+     * the flight to every flight, departing from its destination after its arrival.
+     * With the moves allowed also to every flight from another airport, departing after it can be reached.
+     * The flights are sorted by the departure time, so the flights after the given time from the given airport are
+     * the tail of the per-airport list, found by the binary search. The edges are counted first, then filled in.
+     *
+     * @return false, if the relaxed graph was not built, because it has more edges, than the limit
+     */
+    private boolean buildGraph() {
+        RouteTable routes = problem.getRoutes();
+        int airportsCount = routes.getAirportsCount();
+        int[] shortestDurations = withMoves ? routes.calcShortestDurations() : null;
+
+        int[] departuresCount = new int[airportsCount + 1];
+        for (int flight = 0; flight < flightsCount; flight++) {
+            departuresCount[problem.getOriginId(flight) + 1]++;
+        }
+        departuresStart = new int[airportsCount + 1];
+        for (int airport = 0; airport < airportsCount; airport++) {
+            departuresStart[airport + 1] = departuresStart[airport] + departuresCount[airport + 1];
+        }
+        departures = new int[flightsCount];
+        departureTimes = new int[flightsCount];
+        int[] fill = departuresStart.clone();
+        for (int flight = 0; flight < flightsCount; flight++) {
+            int pos = fill[problem.getOriginId(flight)]++;
+            departures[pos] = flight;
+            departureTimes[pos] = problem.getDepartureTime(flight);
+        }
+
+        int leftCount = aircraftsCount + flightsCount;
+        int[] airports = new int[leftCount];
+        int[] readyTimes = new int[leftCount];
+        int[] edgesCount = new int[leftCount];
+        long totalEdges = 0;
+        for (int u = 0; u < leftCount; u++) {
+            if (u < aircraftsCount) {
+                AircraftLocation location = homeBaseList.get(u);
+                airports[u] = routes.getAirportId(location.getAirport());
+                readyTimes[u] = location.hasTime() ? location.getTime() : Integer.MIN_VALUE;
+            } else {
+                airports[u] = problem.getDestinationId(u - aircraftsCount);
+                readyTimes[u] = problem.getArrivalTime(u - aircraftsCount);
+            }
+            edgesCount[u] = addEdges(u, airports[u], readyTimes[u], shortestDurations, null, 0);
+            totalEdges += edgesCount[u];
+        }
+        if (withMoves && totalEdges > maxRelaxedEdges) {
+            return false;
+        }
+
+        adjStart = new int[leftCount + 1];
+        for (int u = 0; u < leftCount; u++) {
+            adjStart[u + 1] = adjStart[u] + edgesCount[u];
+        }
+        adjTargets = new int[adjStart[leftCount]];
+        for (int u = 0; u < leftCount; u++) {
+            addEdges(u, airports[u], readyTimes[u], shortestDurations, adjTargets, adjStart[u]);
+        }
+        return true;
+    }
+
+    /*
+     * Counts the edges of the left node or, if the targets are given, fills them in from the position on.
+     * The flight of zero length may be followed by the flight, departing at the same time, only the later ones by the order
+     * are taken, the skipped edges leave the unused tail of the node, marked with NONE.
+     *
+     * @return the number of the edges
+     */
+    private int addEdges(final int u, final int airport, final int readyTime, final int[] shortestDurations,
+                         final int[] targets, final int from) {
+        if (airport == RouteTable.UNKNOWN_AIRPORT) {
+            return 0;
+        }
+
+        int airportsCount = departuresStart.length - 1;
+        int count = 0;
+        int pos = from;
+        for (int target = 0; target < airportsCount; target++) {
+            long earliestDeparture;
+            if (target == airport) {
+                earliestDeparture = readyTime;
+            } else if (shortestDurations == null || shortestDurations[airport * airportsCount + target] == RouteTable.NO_ROUTE) {
+                continue;
+            } else {
+                earliestDeparture = (long) readyTime + shortestDurations[airport * airportsCount + target];
+            }
+
+            int first = lowerBound(departureTimes, departuresStart[target], departuresStart[target + 1], earliestDeparture);
+            int last = departuresStart[target + 1];
+            count += last - first;
+            if (targets != null) {
+                for (int i = first; i < last; i++) {
+                    int successor = departures[i];
+                    if (u < aircraftsCount || follows(u - aircraftsCount, successor)) {
+                        targets[pos++] = successor;
+                    }
+                }
+            }
+        }
+        while (targets != null && pos < from + count) {
+            targets[pos++] = NONE;
+        }
+        return count;
+    }
+
+    private boolean follows(final int flight, final int successor) {
+        return problem.getDepartureTime(flight) < problem.getDepartureTime(successor) || flight < successor;
+    }
+
+    /*
+     * @return index of the first element in [from, to), that is not less than the value
+     */
+    private static int lowerBound(final int[] values, final int from, final int to, final long value) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Hopcroft-Karp: the phases of the breadth-first layering from the free left nodes, followed by the depth-first search
+     * of the vertex-disjoint shortest augmenting paths.
+     *
+     * @return the size of the maximum matching
+     */
+    private int maximumMatching() {
+        int leftCount = aircraftsCount + flightsCount;
+        matchLeft = new int[leftCount];
+        matchRight = new int[flightsCount];
+        dist = new int[leftCount];
+        Arrays.fill(matchLeft, NONE);
+        Arrays.fill(matchRight, NONE);
+
+        int[] queue = new int[leftCount];
+        int[] edgePos = new int[leftCount];
+        int[] path = new int[leftCount];
+
+        int matched = 0;
+        while (buildLayers(queue)) {
+            for (int u = 0; u < leftCount; u++) {
+                edgePos[u] = adjStart[u];
+            }
+            for (int u = 0; u < leftCount; u++) {
+                if (matchLeft[u] == NONE && augment(u, edgePos, path)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /*
+     * @return true, if some free flight is reachable by the alternating path
+     */
+    private boolean buildLayers(final int[] queue) {
+        int head = 0;
+        int tail = 0;
+        for (int u = 0; u < dist.length; u++) {
+            if (matchLeft[u] == NONE) {
+                dist[u] = 0;
+                queue[tail++] = u;
+            } else {
+                dist[u] = INFINITY;
+            }
+        }
+
+        boolean found = false;
+        while (head < tail) {
+            int u = queue[head++];
+            for (int e = adjStart[u]; e < adjStart[u + 1]; e++) {
+                int v = adjTargets[e];
+                if (v == NONE) {
+                    continue;
+                }
+                int w = matchRight[v];
+                if (w == NONE) {
+                    found = true;
+                } else if (dist[w] == INFINITY) {
+                    dist[w] = dist[u] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return found;
+    }
+
+    /*
+     * Depth-first search of the augmenting path from the free left node along the layers, without recursion:
+     * the path keeps the left nodes, edgePos of every node on the path points to the edge leading to the next one.
+     *
+     * @return true, if the path was found and the matching was augmented along it
+     */
+    private boolean augment(final int root, final int[] edgePos, final int[] path) {
+        int depth = 0;
+        path[depth++] = root;
+        while (depth > 0) {
+            int u = path[depth - 1];
+            if (edgePos[u] == adjStart[u + 1]) {
+                // Dead end, never visit this node again in this phase
+                dist[u] = INFINITY;
+                depth--;
+                continue;
+            }
+
+            int v = adjTargets[edgePos[u]];
+            int w = (v == NONE) ? NONE : matchRight[v];
+            if (v != NONE && w == NONE) {
+                for (int i = depth - 1; i >= 0; i--) {
+                    int left = path[i];
+                    int right = adjTargets[edgePos[left]];
+                    matchLeft[left] = right;
+                    matchRight[right] = left;
+                }
+                return true;
+            } else if (v != NONE && dist[w] == dist[u] + 1) {
+                path[depth++] = w;
+            } else {
+                edgePos[u]++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,133 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flight durations between the airports, built once from the flights of the search run and shared by all the search states.
+ * The search run over a part of the flights (the repair, the rolling horizon window) gets the table of all the flights,
+ * so the aircrafts can still move through the airports, that only the other flights go to.
+ * The airports get dense ids, the durations are kept in the primitive matrix, indexed by the ids of the origin and the destination.
+ *
+ * The duration of the route is the longest flight between the airports in that direction or, if there is no such flight,
+ * the longest flight in the opposite direction.
+ */
+class RouteTable {
+
+    static final int NO_ROUTE = -1;
+
+    static final int UNKNOWN_AIRPORT = -1;
+
+    private final Map<Airport, Integer> airportIds = new HashMap<>();
+
+    private final Airport[] airports;
+
+    private final int[] durations;
+
+    RouteTable(final List<Flight> flights) {
+        this(flights.toArray(new Flight[flights.size()]));
+    }
+
+    RouteTable(final Flight[] flights) {
+        for (Flight flight : flights) {
+            airportIds.putIfAbsent(flight.getOrigin(), airportIds.size());
+            airportIds.putIfAbsent(flight.getDestination(), airportIds.size());
+        }
+
+        int airportsCount = airportIds.size();
+        airports = new Airport[airportsCount];
+        airportIds.forEach((airport, id) -> airports[id] = airport);
+
+        int[] oneWayDurations = new int[airportsCount * airportsCount];
+        Arrays.fill(oneWayDurations, NO_ROUTE);
+        for (Flight flight : flights) {
+            int route = getAirportId(flight.getOrigin()) * airportsCount + getAirportId(flight.getDestination());
+            oneWayDurations[route] = Math.max(oneWayDurations[route], flight.getFlightLength());
+        }
+
+        durations = new int[airportsCount * airportsCount];
+        for (int origin = 0; origin < airportsCount; origin++) {
+            for (int destination = 0; destination < airportsCount; destination++) {
+                int duration = oneWayDurations[origin * airportsCount + destination];
+                durations[origin * airportsCount + destination] = (duration != NO_ROUTE) ? duration : oneWayDurations[destination * airportsCount + origin];
+            }
+        }
+    }
+
+    /*
+     * @return the id of the airport, or UNKNOWN_AIRPORT, if no flight goes from or to it
+     */
+    int getAirportId(final Airport airport) {
+        Integer id = airportIds.get(airport);
+        return (id == null) ? UNKNOWN_AIRPORT : id;
+    }
+
+    Airport getAirport(final int id) {
+        return airports[id];
+    }
+
+    int getAirportsCount() {
+        return airports.length;
+    }
+
+    /*
+     * @return the flight duration in minutes, or NO_ROUTE, if no flight between the airports is known
+     */
+    int getFlightDuration(final int originId, final int destinationId) {
+        if (originId == UNKNOWN_AIRPORT || destinationId == UNKNOWN_AIRPORT) {
+            return NO_ROUTE;
+        }
+        return durations[originId * airports.length + destinationId];
+    }
+
+    int getFlightDuration(final Airport origin, final Airport destination) {
+        return getFlightDuration(getAirportId(origin), getAirportId(destination));
+    }
+
+    /*
+     * @return the shortest flight duration to the airport from any other airport, or NO_ROUTE, if no flight to it is known
+     */
+    int getShortestInboundDuration(final int destinationId) {
+        int result = NO_ROUTE;
+        for (int origin = 0; origin < airports.length; origin++) {
+            int duration = durations[origin * airports.length + destinationId];
+            if (origin != destinationId && duration != NO_ROUTE && (result == NO_ROUTE || duration < result)) {
+                result = duration;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * @return the matrix of the shortest durations of getting from one airport to another by one or more flights,
+     * indexed like the durations matrix. It is 0 from the airport to itself and NO_ROUTE, if there is no way.
+     */
+    int[] calcShortestDurations() {
+        int n = airports.length;
+        int[] result = durations.clone();
+        for (int i = 0; i < n; i++) {
+            result[i * n + i] = 0;
+        }
+        // Floyd-Warshall, the number of the airports is small
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                int viaStart = result[i * n + k];
+                if (viaStart == NO_ROUTE) {
+                    continue;
+                }
+                for (int j = 0; j < n; j++) {
+                    int viaEnd = result[k * n + j];
+                    if (viaEnd != NO_ROUTE && (result[i * n + j] == NO_ROUTE || viaStart + viaEnd < result[i * n + j])) {
+                        result[i * n + j] = viaStart + viaEnd;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package org.ulitzky.flights.service;
+
+/**
+ * The scenario, submitted to ScenarioService, from the queue to its result.
+ * It is updated by the worker and read by the polling requests, so its state is only published through the volatile fields.
+ */
+public class ScenarioJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SOLVED, FAILED, TIMED_OUT
+    }
+
+    private final String id;
+
+    private final long submittedMillis;
+
+    private volatile long startedMillis;
+
+    private volatile long finishedMillis;
+
+    private volatile ScheduleReadModel schedule;
+
+    private volatile String error;
+
+    private volatile Status status = Status.QUEUED;
+
+    ScenarioJob(final String id, final long submittedMillis) {
+        this.id = id;
+        this.submittedMillis = submittedMillis;
+    }
+
+    void start(final long now) {
+        startedMillis = now;
+        status = Status.RUNNING;
+    }
+
+    void solve(final long now, final ScheduleReadModel schedule) {
+        this.finishedMillis = now;
+        this.schedule = schedule;
+        this.status = Status.SOLVED;
+    }
+
+    void fail(final long now, final String error) {
+        this.finishedMillis = now;
+        this.error = error;
+        this.status = Status.FAILED;
+    }
+
+    /*
+     * The search reached the budget of the scenarios, before it could decide
+     */
+    void timeOut(final long now, final String error) {
+        this.finishedMillis = now;
+        this.error = error;
+        this.status = Status.TIMED_OUT;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    long getSubmittedMillis() {
+        return submittedMillis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /*
+     * @return the time in the queue, until the current time for the queued job
+     */
+    public long getWaitMillis(final long now) {
+        return (status == Status.QUEUED) ? now - submittedMillis : startedMillis - submittedMillis;
+    }
+
+    /*
+     * @return the time of the solving, -1 until it is finished
+     */
+    public long getSolveMillis() {
+        Status current = status;
+        return (current == Status.QUEUED || current == Status.RUNNING) ? -1 : finishedMillis - startedMillis;
+    }
+
+    /*
+     * @return the schedule of the scenario, null until it is solved
+     */
+    public ScheduleReadModel getSchedule() {
+        return schedule;
+    }
+
+    /*
+     * @return the reason, why the scenario cannot be scheduled, null unless it failed or timed out
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,54 @@
+package org.ulitzky.flights.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the load of the scenario workers on the actuator metrics endpoint (/metrics), as "scenarios.*" metrics:
+ * the queue depth (also the scenarios, that joined the solve of the equal one) and the active workers against their limits,
+ * the submitted, rejected and finished (also timed out) scenarios, the time in the queue and the solving time,
+ * the hits of the solved and the running equal scenarios ("scenarios.cache.*").
+ */
+@Component
+public class ScenarioMetrics implements PublicMetrics {
+
+    @Autowired
+    private ScenarioService scenarioService;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> result = new ArrayList<>();
+        result.add(new Metric<>("scenarios.queue-depth", scenarioService.getQueueDepth()));
+        result.add(new Metric<>("scenarios.queue-joined", scenarioService.getJoinedCount()));
+        result.add(new Metric<>("scenarios.queue-capacity", scenarioService.getQueueCapacity()));
+        result.add(new Metric<>("scenarios.active", scenarioService.getActiveCount()));
+        result.add(new Metric<>("scenarios.workers", scenarioService.getWorkers()));
+        result.add(new Metric<>("scenarios.submitted", scenarioService.getSubmittedCount()));
+        result.add(new Metric<>("scenarios.rejected", scenarioService.getRejectedCount()));
+        result.add(new Metric<>("scenarios.solved", scenarioService.getSolvedCount()));
+        result.add(new Metric<>("scenarios.failed", scenarioService.getFailedCount()));
+        result.add(new Metric<>("scenarios.timed-out", scenarioService.getTimedOutCount()));
+        result.add(new Metric<>("scenarios.solves", scenarioService.getSolveCount()));
+        result.add(new Metric<>("scenarios.wait-time-ms.mean", scenarioService.getMeanWaitMillis()));
+        result.add(new Metric<>("scenarios.solve-time-ms.mean", scenarioService.getMeanSolveMillis()));
+        result.add(new Metric<>("scenarios.solve-time-ms.max", scenarioService.getMaxSolveMillis()));
+        ScenarioResultCache cache = scenarioService.getResultCache();
+        result.add(new Metric<>("scenarios.cache.hits", cache.getHits()));
+        result.add(new Metric<>("scenarios.cache.misses", cache.getMisses()));
+        result.add(new Metric<>("scenarios.cache.coalesced", cache.getCoalesced()));
+        result.add(new Metric<>("scenarios.cache.hit-rate", cache.getHitRate()));
+        result.add(new Metric<>("scenarios.cache.size", cache.getSize()));
+        result.add(new Metric<>("scenarios.cache.evictions", cache.getEvictions()));
+        return result;
+    }
+
+    void setScenarioService(final ScenarioService scenarioService) {
+        this.scenarioService = scenarioService;
+    }
+}
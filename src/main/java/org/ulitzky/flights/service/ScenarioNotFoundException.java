@@ -0,0 +1,13 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the scenario is not known, or its result is not kept any more
+ */
+public class ScenarioNotFoundException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScenarioNotFoundException(final String message) {
+        super(message);
+    }
+}
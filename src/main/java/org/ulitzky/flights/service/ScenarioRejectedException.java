@@ -0,0 +1,20 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the scenario cannot be queued: the queue is full, or the service is shutting down
+ */
+public class ScenarioRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean shuttingDown;
+
+    public ScenarioRejectedException(final String message, final boolean shuttingDown) {
+        super(message);
+        this.shuttingDown = shuttingDown;
+    }
+
+    public boolean isShuttingDown() {
+        return shuttingDown;
+    }
+}
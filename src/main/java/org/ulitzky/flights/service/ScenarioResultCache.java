@@ -0,0 +1,187 @@
+package org.ulitzky.flights.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the solved scenarios by the hash of their canonical input, together with the solves still running:
+ * the equal scenario gets the cached result at once, or joins the running solve of the equal one (single flight),
+ * only the first one of them is solved. The empty result (no schedule) is cached as well, the failed solve is not.
+ * The scenarios, that joined the solve, wait for it, until its owner starts it.
+ *
+ * The least recently used results are evicted, when the capacity is reached. The cache is thread-safe.
+ */
+class ScenarioResultCache {
+
+    /*
+     * The result of the scenario, either ready or still being solved. Only the owner solves the scenario, starts it and completes the result.
+     */
+    static final class Lookup {
+
+        private final CompletableFuture<Optional<ScheduleReadModel>> result;
+
+        private final CompletableFuture<Long> started;
+
+        private final boolean owner;
+
+        private Lookup(final CompletableFuture<Optional<ScheduleReadModel>> result, final CompletableFuture<Long> started, final boolean owner) {
+            this.result = result;
+            this.started = started;
+            this.owner = owner;
+        }
+
+        CompletableFuture<Optional<ScheduleReadModel>> getResult() {
+            return result;
+        }
+
+        /*
+         * @return the time, the solve was started at, 0 for the cached result
+         */
+        CompletableFuture<Long> getStarted() {
+            return started;
+        }
+
+        boolean isOwner() {
+            return owner;
+        }
+    }
+
+    private final int capacity;
+
+    private final Map<String, Optional<ScheduleReadModel>> results;
+
+    private final Map<String, Lookup> runningSolves = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    ScenarioResultCache(final int capacity) {
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<String, Optional<ScheduleReadModel>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Optional<ScheduleReadModel>> eldest) {
+                if (size() > ScenarioResultCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /*
+     * @param admitted whether the scenario may wait for the solve, either its own or the running one of the equal scenario
+     * @return the cached result, the running solve of the equal scenario, or the new solve, owned by the caller,
+     * Optional.empty(), if the result is not cached and the scenario is not admitted
+     */
+    synchronized Optional<Lookup> lookup(final String key, final boolean admitted) {
+        Optional<ScheduleReadModel> cached = results.get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return Optional.of(new Lookup(CompletableFuture.completedFuture(cached), CompletableFuture.completedFuture(0L), false));
+        }
+        if (!admitted) {
+            return Optional.empty();
+        }
+
+        Lookup running = runningSolves.get(key);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return Optional.of(new Lookup(running.getResult(), running.getStarted(), false));
+        }
+
+        misses.incrementAndGet();
+        Lookup solve = new Lookup(new CompletableFuture<>(), new CompletableFuture<>(), true);
+        runningSolves.put(key, solve);
+        return Optional.of(solve);
+    }
+
+    /*
+     * The owned solve starts, the scenarios, that joined it, are not waiting for it in the queue any more
+     */
+    void start(final String key, final long now) {
+        Lookup solve;
+        synchronized (this) {
+            solve = runningSolves.get(key);
+        }
+        if (solve != null) {
+            solve.getStarted().complete(now);
+        }
+    }
+
+    /*
+     * Cache the result of the owned solve and pass it to all the scenarios, that joined it
+     */
+    void complete(final String key, final Optional<ScheduleReadModel> result) {
+        Lookup solve;
+        synchronized (this) {
+            solve = runningSolves.remove(key);
+            if (capacity > 0) {
+                results.put(key, result);
+            }
+        }
+        if (solve != null) {
+            solve.getResult().complete(result);
+        }
+    }
+
+    /*
+     * Fail the owned solve for all the scenarios, that joined it, the next equal scenario is solved again
+     */
+    void fail(final String key, final Throwable error) {
+        Lookup solve;
+        synchronized (this) {
+            solve = runningSolves.remove(key);
+        }
+        if (solve != null) {
+            solve.getResult().completeExceptionally(error);
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getSize() {
+        return results.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /*
+     * @return the number of the scenarios, that joined the running solve of the equal one
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    /*
+     * @return the share of the scenarios, that were not solved themselves, either cached or coalesced
+     */
+    double getHitRate() {
+        long served = hits.get() + coalesced.get();
+        long total = served + misses.get();
+        return (total == 0) ? 0 : (double) served / total;
+    }
+}
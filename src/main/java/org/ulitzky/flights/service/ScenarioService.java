@@ -0,0 +1,455 @@
+package org.ulitzky.flights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Schedules the what-if scenarios (their own airfleet and flights) next to the schedule of the service.
+ *
+ * The scenarios are solved by the fixed number of the workers, the submitted ones wait in the bounded queue.
+ * The scenario, that does not fit into the queue, is rejected at once (ScenarioRejectedException), so the load
+ * is pushed back to the clients instead of piling up in the service. The scenarios, waiting for the solve of the equal one,
+ * take the places in the queue as well. The jobs are polled by their id,
+ * only the configured number of the finished ones is kept. Every scenario is searched within its own budget,
+ * so the hard one does not block its worker for long, and apart from the statistics of the schedule of the service.
+ *
+ * The scenarios are solved in their canonical form: the home bases sorted by the registration, the flights by the departure
+ * and the route, the airport codes upper case. The equal canonical scenarios (by the hash of their input and the solver settings)
+ * are solved only once, see ScenarioResultCache.
+ */
+@Service
+@Slf4j
+public class ScenarioService {
+
+    /*
+     * Number of the scenarios solved at once. Every one of them uses "solver.parallelism" threads.
+     */
+    @Value("${scenarios.workers:2}")
+    private int workers = 2;
+
+    /*
+     * Number of the scenarios waiting for the worker or for the solve of the equal scenario, the next ones are rejected
+     */
+    @Value("${scenarios.queue-capacity:20}")
+    private int queueCapacity = 20;
+
+    /*
+     * Number of the finished scenarios, whose results are kept for the polling, the oldest ones are dropped first
+     */
+    @Value("${scenarios.retained-jobs:100}")
+    private int retainedJobs = 100;
+
+    /*
+     * Time limit of one search run of the scenario in milliseconds, the scenario, that is not decided within it, is TIMED_OUT.
+     * 0 means no limit.
+     */
+    @Value("${scenarios.time-limit-ms:30000}")
+    private long timeLimitMillis = 30000;
+
+    /*
+     * Maximal number of the states, explored by one search run of the scenario. 0 means no limit.
+     */
+    @Value("${scenarios.max-nodes:0}")
+    private long maxNodes = 0;
+
+    @Autowired
+    private FlightScheduleBuildingService schedulerBuilder;
+
+    @Autowired
+    private FlightsDataMapper dataMapper;
+
+    /*
+     * Number of the solved scenarios, whose results are cached for the equal ones. 0 disables the cache,
+     * the equal scenarios, submitted while one of them is being solved, still share its result.
+     */
+    @Value("${scenarios.cache-size:100}")
+    private int cacheSize = 100;
+
+    private ThreadPoolExecutor executor;
+
+    private ScenarioResultCache resultCache;
+
+    private final ConcurrentMap<String, ScenarioJob> jobs = new ConcurrentHashMap<>();
+
+    private final Deque<String> finishedJobs = new ArrayDeque<>();
+
+    /*
+     * The places of the queue, taken by the queued scenarios until they start and by the joined ones until they are solved
+     */
+    private final AtomicInteger waitingCount = new AtomicInteger();
+
+    private final AtomicInteger joinedCount = new AtomicInteger();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong solvedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    private final AtomicLong solveCount = new AtomicLong();
+
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    private final AtomicLong totalSolveMillis = new AtomicLong();
+
+    private final AtomicLong maxSolveMillis = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        resultCache = new ScenarioResultCache(cacheSize);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "scenario-solver-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /*
+     * Queue the scenario to be solved. The scenario, equal to the already solved or queued one, is not solved again:
+     * it gets the cached result at once, even when the queue is full, or joins the solve of the equal one, taking no worker.
+     * The joined scenario is QUEUED, until the solve of the equal one starts, and takes the place in the queue until it is solved.
+     *
+     * @return the job of the scenario, to be polled by its id
+     * @throws ScenarioRejectedException, if the queue is full or the service is shutting down
+     */
+    public ScenarioJob submit(final List<AircraftLocation> homeBases, final List<Flight> flights) {
+        List<AircraftLocation> canonicalHomeBases = canonicalHomeBases(homeBases);
+        List<Flight> canonicalFlights = canonicalFlights(flights);
+        String key = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ScheduleSnapshotStore.hashInputs(canonicalHomeBases, canonicalFlights, getSettingsKey()));
+
+        ScenarioJob job = new ScenarioJob(UUID.randomUUID().toString(), System.currentTimeMillis());
+        // The place is reserved before the lookup, so the concurrent equal scenarios cannot all join over the capacity
+        boolean admitted = reserveWaitingPlace();
+        Optional<ScenarioResultCache.Lookup> found = resultCache.lookup(key, admitted);
+        if (!found.isPresent()) {
+            rejectedCount.incrementAndGet();
+            throw rejection();
+        }
+
+        ScenarioResultCache.Lookup lookup = found.get();
+        boolean joined = !lookup.isOwner() && !lookup.getResult().isDone();
+        if (admitted && !lookup.isOwner() && !joined) {
+            // The cached result does not wait
+            waitingCount.decrementAndGet();
+        }
+        jobs.put(job.getId(), job);
+        if (lookup.isOwner()) {
+            try {
+                executor.execute(() -> solve(job, key, canonicalHomeBases, canonicalFlights));
+            } catch (RejectedExecutionException e) {
+                waitingCount.decrementAndGet();
+                jobs.remove(job.getId());
+                rejectedCount.incrementAndGet();
+                ScenarioRejectedException rejection = rejection();
+                // The equal scenarios, that joined meanwhile, are rejected as well
+                resultCache.fail(key, rejection);
+                throw rejection;
+            }
+            log.info("Queued the scenario {} of {} aircrafts and {} flights", job.getId(), homeBases.size(), flights.size());
+        } else {
+            if (joined) {
+                joinedCount.incrementAndGet();
+            }
+            // The cached result has started before the submit
+            lookup.getStarted().thenAccept(startMillis -> job.start(Math.max(startMillis, job.getSubmittedMillis())));
+            log.info("The scenario {} of {} aircrafts and {} flights is already solved or queued", job.getId(), homeBases.size(), flights.size());
+        }
+        submittedCount.incrementAndGet();
+
+        // The cached result completes the job at once, in this thread
+        lookup.getResult().whenComplete((schedule, error) -> {
+            if (joined) {
+                joinedCount.decrementAndGet();
+                waitingCount.decrementAndGet();
+            }
+            finish(job, schedule, error);
+        });
+        return job;
+    }
+
+    /*
+     * @return true, if the place in the queue was taken, false, if the queue is full
+     */
+    private boolean reserveWaitingPlace() {
+        while (true) {
+            int waiting = waitingCount.get();
+            if (waiting >= queueCapacity) {
+                return false;
+            }
+            if (waitingCount.compareAndSet(waiting, waiting + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private ScenarioRejectedException rejection() {
+        return executor.isShutdown()
+                ? new ScenarioRejectedException("The scenarios are not accepted, the service is shutting down", true)
+                : new ScenarioRejectedException("The scenario queue is full, " + queueCapacity + " scenarios are waiting", false);
+    }
+
+    /*
+     * @return the home bases in the order of the registration, with the airport codes normalized
+     */
+    private static List<AircraftLocation> canonicalHomeBases(final List<AircraftLocation> homeBases) {
+        return homeBases.stream()
+                        .map(homeBase -> new AircraftLocation(homeBase.getAircraft(), normalize(homeBase.getAirport()), homeBase.getTime()))
+                        .sorted(Comparator.comparing((AircraftLocation homeBase) -> homeBase.getAircraft().getRegistration())
+                                          .thenComparing(homeBase -> homeBase.getAirport().getCode()))
+                        .collect(Collectors.toList());
+    }
+
+    /*
+     * @return the flights in the order of the departure and the route, with the airport codes normalized
+     */
+    private static List<Flight> canonicalFlights(final List<Flight> flights) {
+        return flights.stream()
+                      .map(flight -> new Flight(normalize(flight.getOrigin()), normalize(flight.getDestination()),
+                                                flight.getDepartureTime(), flight.getFlightLength()))
+                      .sorted(Comparator.comparingInt(Flight::getDepartureTime)
+                                        .thenComparing(flight -> flight.getOrigin().getCode())
+                                        .thenComparing(flight -> flight.getDestination().getCode())
+                                        .thenComparingInt(Flight::getFlightLength))
+                      .collect(Collectors.toList());
+    }
+
+    private static Airport normalize(final Airport airport) {
+        return new Airport(ScheduleReadModel.normalizeAirportCode(airport.getCode()));
+    }
+
+    /*
+     * @return the solver settings together with the budget of the scenarios, the result of the scenario depends on them
+     */
+    private String getSettingsKey() {
+        return schedulerBuilder.getSettingsKey() + ",scenarioMaxNodes=" + maxNodes + ",scenarioTimeLimitMillis=" + timeLimitMillis;
+    }
+
+    /*
+     * Solve the scenario for all the equal ones, that are waiting for it
+     */
+    private void solve(final ScenarioJob job, final String key, final List<AircraftLocation> homeBases, final List<Flight> flights) {
+        long start = System.currentTimeMillis();
+        job.start(start);
+        waitingCount.decrementAndGet();
+        resultCache.start(key, start);
+        totalWaitMillis.addAndGet(start - job.getSubmittedMillis());
+        try {
+            Optional<List<FlightAssignment>> schedule = schedulerBuilder.buildFlilghtAssignments(homeBases, flights, maxNodes, timeLimitMillis);
+            recordSolveTime(System.currentTimeMillis() - start);
+            resultCache.complete(key, schedule.map(assignments -> new ScheduleReadModel(start, homeBases, assignments,
+                                                                                        FlightsService.findUncoveredFlights(flights, assignments),
+                                                                                        dataMapper)));
+        } catch (SearchBudgetExhaustedException e) {
+            log.warn("Cannot solve the scenario {} within its budget, {}", job.getId(), e.getMessage());
+            recordSolveTime(System.currentTimeMillis() - start);
+            resultCache.fail(key, e);
+        } catch (RuntimeException e) {
+            log.error("Cannot solve the scenario {}", job.getId(), e);
+            recordSolveTime(System.currentTimeMillis() - start);
+            resultCache.fail(key, e);
+        }
+    }
+
+    private void recordSolveTime(final long solveMillis) {
+        solveCount.incrementAndGet();
+        totalSolveMillis.addAndGet(solveMillis);
+        maxSolveMillis.accumulateAndGet(solveMillis, Math::max);
+    }
+
+    private void finish(final ScenarioJob job, final Optional<ScheduleReadModel> schedule, final Throwable error) {
+        long now = System.currentTimeMillis();
+        if (job.getStatus() == ScenarioJob.Status.QUEUED) {
+            // The solve, that the job joined, was rejected before it started
+            job.start(now);
+        }
+        if (error instanceof SearchBudgetExhaustedException) {
+            job.timeOut(now, error.getMessage());
+            timedOutCount.incrementAndGet();
+        } else if (error != null) {
+            job.fail(now, String.valueOf(error.getMessage()));
+            failedCount.incrementAndGet();
+        } else if (schedule.isPresent()) {
+            job.solve(now, schedule.get());
+            solvedCount.incrementAndGet();
+        } else {
+            job.fail(now, "Cannot build valid schedule");
+            failedCount.incrementAndGet();
+        }
+        log.info("The scenario {} is {} in {} ms", job.getId(), job.getStatus(), job.getSolveMillis());
+        retain(job);
+    }
+
+    /*
+     * Keep the finished job for the polling, dropping the oldest finished ones above the limit
+     */
+    private void retain(final ScenarioJob job) {
+        synchronized (finishedJobs) {
+            finishedJobs.addLast(job.getId());
+            while (finishedJobs.size() > retainedJobs) {
+                jobs.remove(finishedJobs.removeFirst());
+            }
+        }
+    }
+
+    /*
+     * @throws ScenarioNotFoundException, if there is no such job, or it is not kept any more
+     */
+    public ScenarioJob getJob(final String id) {
+        ScenarioJob job = jobs.get(id);
+        if (job == null) {
+            throw new ScenarioNotFoundException("No scenario " + id);
+        }
+        return job;
+    }
+
+    /*
+     * @return the number of the scenarios waiting for the worker
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /*
+     * @return the number of the scenarios waiting for the solve of the equal scenario
+     */
+    public int getJoinedCount() {
+        return joinedCount.get();
+    }
+
+    /*
+     * @return the number of the scenarios being solved
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSolvedCount() {
+        return solvedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    /*
+     * @return the number of the scenarios, that were searched for the schedule, the rest got the result of the equal ones
+     */
+    public long getSolveCount() {
+        return solveCount.get();
+    }
+
+    /*
+     * @return the mean time of the searched scenarios in the queue
+     */
+    public double getMeanWaitMillis() {
+        long solves = solveCount.get();
+        return (solves == 0) ? 0 : (double) totalWaitMillis.get() / solves;
+    }
+
+    /*
+     * @return the mean time of the search for the schedule of the scenario
+     */
+    public double getMeanSolveMillis() {
+        long solves = solveCount.get();
+        return (solves == 0) ? 0 : (double) totalSolveMillis.get() / solves;
+    }
+
+    public long getMaxSolveMillis() {
+        return maxSolveMillis.get();
+    }
+
+    void setWorkers(final int workers) {
+        this.workers = workers;
+    }
+
+    void setQueueCapacity(final int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /*
+     * @return the cache of the solved scenarios with its hit/miss counters
+     */
+    ScenarioResultCache getResultCache() {
+        return resultCache;
+    }
+
+    void setRetainedJobs(final int retainedJobs) {
+        this.retainedJobs = retainedJobs;
+    }
+
+    void setTimeLimitMillis(final long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+
+    void setMaxNodes(final long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    void setSchedulerBuilder(final FlightScheduleBuildingService schedulerBuilder) {
+        this.schedulerBuilder = schedulerBuilder;
+    }
+
+    void setDataMapper(final FlightsDataMapper dataMapper) {
+        this.dataMapper = dataMapper;
+    }
+}
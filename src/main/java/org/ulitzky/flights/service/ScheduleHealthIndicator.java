@@ -0,0 +1,56 @@
+package org.ulitzky.flights.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the readiness of the flight schedule on the actuator health endpoint (/health):
+ *    - UP, when the schedule can be queried, with the number of the flights it leaves uncovered, if it is the partial one
+ *    - OUT_OF_SERVICE, while the first schedule is being built, with the progress of the search
+ *    - DOWN, when the schedule cannot be built
+ */
+@Component
+public class ScheduleHealthIndicator extends AbstractHealthIndicator {
+
+    @Autowired
+    private FlightsService flightsService;
+
+    @Autowired
+    private FlightScheduleBuildingService schedulerBuilder;
+
+    @Override
+    protected void doHealthCheck(final Health.Builder builder) {
+        FlightsService.BuildState buildState = flightsService.getBuildState();
+        builder.withDetail("state", buildState);
+
+        if (flightsService.isScheduleReady()) {
+            ScheduleReadModel schedule = flightsService.getReadModel();
+            builder.up().withDetail("version", schedule.getVersion());
+            if (!schedule.getUncoveredFlights().isEmpty()) {
+                builder.withDetail("uncoveredFlights", schedule.getUncoveredFlights().size());
+            }
+        } else if (buildState == FlightsService.BuildState.FAILED) {
+            builder.down().withDetail("error", String.valueOf(flightsService.getBuildError()));
+        } else {
+            builder.outOfService();
+        }
+
+        if (buildState == FlightsService.BuildState.BUILDING || !flightsService.isScheduleReady()) {
+            SearchStatistics statistics = schedulerBuilder.getLastRunStatistics();
+            int targetDepth = statistics.getTargetDepth();
+            builder.withDetail("progress", (targetDepth == 0) ? 0 : (double) statistics.getMaxDepth() / targetDepth)
+                   .withDetail("nodesExpanded", statistics.getNodesExpanded())
+                   .withDetail("elapsedMillis", statistics.getElapsedMillis());
+        }
+    }
+
+    void setFlightsService(final FlightsService flightsService) {
+        this.flightsService = flightsService;
+    }
+
+    void setSchedulerBuilder(final FlightScheduleBuildingService schedulerBuilder) {
+        this.schedulerBuilder = schedulerBuilder;
+    }
+}
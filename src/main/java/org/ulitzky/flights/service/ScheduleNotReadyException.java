@@ -0,0 +1,20 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the schedule is queried before its first build is completed
+ */
+public class ScheduleNotReadyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final FlightsService.BuildState buildState;
+
+    public ScheduleNotReadyException(final FlightsService.BuildState buildState) {
+        super("The flight schedule is not ready, its build is " + buildState);
+        this.buildState = buildState;
+    }
+
+    public FlightsService.BuildState getBuildState() {
+        return buildState;
+    }
+}
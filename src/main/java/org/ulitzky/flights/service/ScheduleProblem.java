@@ -0,0 +1,97 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.Flight;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The input of one schedule search run, shared by all the search states:
+ * the flights to cover, sorted by the departure time, so the state can refer to the flight by its index,
+ * the departure and arrival times and the airport ids of these flights as the plain arrays and the table of the route durations.
+ * The route table is built from the flights to cover, unless the one of more flights is given.
+ */
+class ScheduleProblem {
+
+    private final Flight[] flights;
+
+    private final int[] departureTimes;
+
+    private final int[] arrivalTimes;
+
+    private final int[] originIds;
+
+    private final int[] destinationIds;
+
+    private final int[] arrivalOrder;
+
+    private final RouteTable routes;
+
+    ScheduleProblem(final List<Flight> flightsToCover) {
+        this(flightsToCover, null);
+    }
+
+    /*
+     * @param sharedRoutes the route table, that knows all the airports of the flights to cover, null to build it from them
+     */
+    ScheduleProblem(final List<Flight> flightsToCover, final RouteTable sharedRoutes) {
+        List<Flight> sortedFlights = new ArrayList<>(flightsToCover);
+        sortedFlights.sort(Comparator.comparingInt(Flight::getDepartureTime));
+        this.flights = sortedFlights.toArray(new Flight[sortedFlights.size()]);
+
+        this.routes = (sharedRoutes != null) ? sharedRoutes : new RouteTable(flights);
+
+        this.departureTimes = new int[flights.length];
+        this.arrivalTimes = new int[flights.length];
+        this.originIds = new int[flights.length];
+        this.destinationIds = new int[flights.length];
+        for (int i = 0; i < flights.length; i++) {
+            departureTimes[i] = flights[i].getDepartureTime();
+            arrivalTimes[i] = flights[i].getScheduledArrivalTime();
+            originIds[i] = routes.getAirportId(flights[i].getOrigin());
+            destinationIds[i] = routes.getAirportId(flights[i].getDestination());
+        }
+
+        this.arrivalOrder = IntStream.range(0, flights.length).boxed()
+                                     .sorted(Comparator.comparingInt(i -> arrivalTimes[i]))
+                                     .mapToInt(Integer::intValue)
+                                     .toArray();
+    }
+
+    Flight getFlight(final int index) {
+        return flights[index];
+    }
+
+    int getDepartureTime(final int index) {
+        return departureTimes[index];
+    }
+
+    int getArrivalTime(final int index) {
+        return arrivalTimes[index];
+    }
+
+    int getOriginId(final int index) {
+        return originIds[index];
+    }
+
+    int getDestinationId(final int index) {
+        return destinationIds[index];
+    }
+
+    /*
+     * @return indexes of the flights, sorted by the arrival time
+     */
+    int[] getArrivalOrder() {
+        return arrivalOrder;
+    }
+
+    int getFlightsCount() {
+        return flights.length;
+    }
+
+    RouteTable getRoutes() {
+        return routes;
+    }
+}
@@ -0,0 +1,231 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The built schedule, as it is queried by the API: mapped to the resources once and indexed
+ *    - by the origin airport code (case insensitive) for the flight plan
+ *    - by the aircraft registration for the operations plan
+ * so every query is one map lookup. The lists are immutable and shared by all the queries, in the order of the schedule.
+ * The partial schedule also keeps the flights, it leaves uncovered, they are listed without the equipment.
+ * The flight plan is also indexed by the departure time, in total and per origin airport (see DepartureIndex),
+ * for the time range queries, returned page by page.
+ *
+ * The model is immutable, so it is published as the whole snapshot of the schedule: the readers, holding it, never see a half-built one.
+ * Every built schedule gets the new version. The responses, serialized by the API, are kept with the model of their version,
+ * so they are dropped together with it, when the schedule is rebuilt.
+ */
+public class ScheduleReadModel {
+
+    private final long version;
+
+    private final List<AircraftLocation> homeBases;
+
+    private final List<FlightAssignment> flightAssignments;
+
+    private final List<Flight> uncoveredFlights;
+
+    private final List<FlightAssignmentResource> flightPlan;
+
+    private final List<FlightAssignmentResource> uncoveredFlightPlan;
+
+    private final Map<String, List<FlightAssignmentResource>> flightPlanByOrigin;
+
+    private final DepartureIndex departureIndex;
+
+    private final Map<String, DepartureIndex> departureIndexByOrigin;
+
+    private final Map<String, List<OperatingInstructionResource>> operationsPlanByRegistration;
+
+    private final List<String> registrations;
+
+    private final ConcurrentMap<String, byte[]> serializedResponses = new ConcurrentHashMap<>();
+
+    ScheduleReadModel(final long version, final List<AircraftLocation> homeBases, final List<FlightAssignment> schedule, final FlightsDataMapper dataMapper) {
+        this(version, homeBases, schedule, Collections.emptyList(), dataMapper);
+    }
+
+    ScheduleReadModel(final long version, final List<AircraftLocation> homeBases, final List<FlightAssignment> schedule, final List<Flight> uncoveredFlights,
+                      final FlightsDataMapper dataMapper) {
+        this.version = version;
+        this.homeBases = Collections.unmodifiableList(new ArrayList<>(homeBases));
+        this.uncoveredFlights = Collections.unmodifiableList(new ArrayList<>(uncoveredFlights));
+
+        List<FlightAssignment> assignments = new ArrayList<>(schedule);
+        List<FlightAssignmentResource> flightPlanResources = dataMapper.mapToFlightPlan(assignments);
+        List<OperatingInstructionResource> operationsResources = dataMapper.mapToOperatingInstructionResources(assignments);
+
+        Map<String, List<FlightAssignmentResource>> byOrigin = new HashMap<>();
+        Map<String, List<Integer>> departureTimesByOrigin = new HashMap<>();
+        Map<String, List<OperatingInstructionResource>> byRegistration = new HashMap<>();
+        List<Integer> departureTimes = new ArrayList<>(assignments.size());
+        for (int i = 0; i < assignments.size(); i++) {
+            FlightAssignment assignment = assignments.get(i);
+            String origin = normalizeAirportCode(assignment.getFlight().getOrigin().getCode());
+            byOrigin.computeIfAbsent(origin, k -> new ArrayList<>()).add(flightPlanResources.get(i));
+            departureTimesByOrigin.computeIfAbsent(origin, k -> new ArrayList<>()).add(assignment.getFlight().getDepartureTime());
+            departureTimes.add(assignment.getFlight().getDepartureTime());
+            byRegistration.computeIfAbsent(assignment.getAircraft().getRegistration(), k -> new ArrayList<>())
+                          .add(operationsResources.get(i));
+        }
+
+        this.flightAssignments = Collections.unmodifiableList(assignments);
+        this.flightPlan = Collections.unmodifiableList(flightPlanResources);
+        this.uncoveredFlightPlan = Collections.unmodifiableList(uncoveredFlights.stream()
+                                                                               .map(flight -> dataMapper.mapToFlightAssignmentResource(new FlightAssignment(flight, null)))
+                                                                               .collect(Collectors.toList()));
+        this.flightPlanByOrigin = freeze(byOrigin);
+        this.departureIndex = new DepartureIndex(departureTimes, flightPlanResources);
+        Map<String, DepartureIndex> indexByOrigin = new HashMap<>();
+        byOrigin.forEach((origin, flights) -> indexByOrigin.put(origin, new DepartureIndex(departureTimesByOrigin.get(origin), flights)));
+        this.departureIndexByOrigin = Collections.unmodifiableMap(indexByOrigin);
+        this.operationsPlanByRegistration = freeze(byRegistration);
+        this.registrations = Collections.unmodifiableList(homeBases.stream()
+                                                                   .map(homeBase -> homeBase.getAircraft().getRegistration())
+                                                                   .distinct()
+                                                                   .collect(Collectors.toList()));
+    }
+
+    private static <T> Map<String, List<T>> freeze(final Map<String, List<T>> index) {
+        index.replaceAll((key, list) -> Collections.unmodifiableList(list));
+        return Collections.unmodifiableMap(index);
+    }
+
+    public static String normalizeAirportCode(final String code) {
+        return code.toUpperCase(Locale.ROOT);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /*
+     * @return the initial locations of the airfleet, the schedule was built for
+     */
+    List<AircraftLocation> getHomeBases() {
+        return homeBases;
+    }
+
+    /*
+     * @return the assignments of the flights to the aircrafts, the model was built from
+     */
+    List<FlightAssignment> getFlightAssignments() {
+        return flightAssignments;
+    }
+
+    /*
+     * @return the flights, that the schedule does not cover, in the order of the departure
+     */
+    List<Flight> getUncoveredFlights() {
+        return uncoveredFlights;
+    }
+
+    /*
+     * @return the flights, that the schedule does not cover, empty for the complete schedule
+     */
+    public List<FlightAssignmentResource> getUncoveredFlightPlan() {
+        return uncoveredFlightPlan;
+    }
+
+    /*
+     * @return all the flights of the schedule
+     */
+    public List<FlightAssignmentResource> getFlightPlan() {
+        return flightPlan;
+    }
+
+    /*
+     * @return the flights from the given airport, the code is case insensitive
+     */
+    public List<FlightAssignmentResource> getFlightPlan(final String origin) {
+        return flightPlanByOrigin.getOrDefault(normalizeAirportCode(origin), Collections.emptyList());
+    }
+
+    /*
+     * @return the page of the flights, departing in the given time range, sorted by the departure time.
+     * The cursor keeps the departure time of the next flight and how many flights of that time were already returned,
+     * so it stays valid, when the schedule is rebuilt in between.
+     *
+     * @param origin the origin airport, case insensitive, null for all the airports
+     * @param fromTime the earliest departure time, inclusive
+     * @param toTime the latest departure time, exclusive
+     * @param cursor the cursor, returned with the previous page, null for the first page
+     * @param limit the maximal number of the flights on the page
+     * @throws IllegalArgumentException, if the cursor or the limit are invalid
+     */
+    public FlightPlanPage getFlightPlanPage(final String origin, final int fromTime, final int toTime, final String cursor, final int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid page size " + limit);
+        }
+        DepartureIndex index = (origin == null) ? departureIndex : departureIndexByOrigin.get(normalizeAirportCode(origin));
+        if (index == null) {
+            return new FlightPlanPage(Collections.emptyList(), null);
+        }
+
+        int start = index.lowerBound(fromTime);
+        if (cursor != null) {
+            int[] position = decodeCursor(cursor);
+            start = Math.max(start, Math.min(index.lowerBound(position[0]) + position[1], index.lowerBound(position[0] + 1)));
+        }
+        int end = Math.max(start, index.lowerBound(toTime));
+        int pageEnd = (int) Math.min((long) start + limit, end);
+
+        String nextCursor = null;
+        if (pageEnd < end) {
+            int nextTime = index.getDepartureTime(pageEnd);
+            nextCursor = encodeCursor(nextTime, pageEnd - index.lowerBound(nextTime));
+        }
+        return new FlightPlanPage(index.getFlights(start, pageEnd), nextCursor);
+    }
+
+    private static String encodeCursor(final int departureTime, final int skipped) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((departureTime + ":" + skipped).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+     * @return the departure time and the number of the flights of that time to skip
+     */
+    private static int[] decodeCursor(final String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            int skipped = Integer.parseInt(position[1]);
+            if (position.length != 2 || skipped < 0) {
+                throw new IllegalArgumentException("Invalid cursor " + cursor);
+            }
+            return new int[] {Integer.parseInt(position[0]), skipped};
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // The invalid Base64 is reported as IllegalArgumentException by the decoder itself
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+    }
+
+    public List<OperatingInstructionResource> getOperationsPlan(final String registration) {
+        return operationsPlanByRegistration.getOrDefault(registration, Collections.emptyList());
+    }
+
+    /*
+     * @return the registrations of the whole airfleet, in the order of the home bases, also of the aircrafts without the flights
+     */
+    public List<String> getRegistrations() {
+        return registrations;
+    }
+
+    /*
+     * @return the response, serialized for the given key within this version of the schedule, serializing it on the first call.
+     * The keys must come from the schedule itself (airports, registrations), so their number is bounded by it.
+     */
+    public byte[] getSerializedResponse(final String key, final Supplier<byte[]> serializer) {
+        return serializedResponses.computeIfAbsent(key, k -> serializer.get());
+    }
+}
@@ -0,0 +1,13 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the schedule cannot be repaired after the change of the flights, the current schedule is kept then
+ */
+public class ScheduleRepairException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ScheduleRepairException(final String message) {
+        super(message);
+    }
+}
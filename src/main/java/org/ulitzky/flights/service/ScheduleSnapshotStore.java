@@ -0,0 +1,245 @@
+package org.ulitzky.flights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.ulitzky.flights.model.Aircraft;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The built schedule, persisted to the file of the given directory, so the restarted service with the same inputs
+ * does not search for it again.
+ *
+ * The snapshot is keyed by the SHA-256 hash of the home bases, the flights and the solver settings, it is only loaded for the equal hash.
+ * It refers to the flights and the aircrafts by their index in the inputs, so the loaded schedule shares the same instances
+ * with them, as the built one does. Only the aircraft moves, that are not in the inputs, are stored with their route and times:
+ *
+ *    magic, format version, input hash (32 bytes), airport codes (count, then length and UTF-8 bytes of each)
+ *    assignments (count, then flight index and aircraft index of each, the flight index -1 followed by
+ *                 origin and destination airport index, departure time and flight length for the move)
+ *
+ * The file is replaced atomically and read through the memory mapping, the invalid or stale snapshot is ignored.
+ */
+@Slf4j
+class ScheduleSnapshotStore {
+
+    static final String SNAPSHOT_FILE = "schedule.snapshot";
+
+    private static final int MAGIC = 0x464c5350;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HASH_LENGTH = 32;
+
+    private static final int MOVE = -1;
+
+    /*
+     * The inputs are only written to the digest
+     */
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+
+    private final Path file;
+
+    ScheduleSnapshotStore(final Path directory) {
+        this.file = directory.resolve(SNAPSHOT_FILE);
+    }
+
+    /*
+     * @return the hash of everything the built schedule depends on, in the order of the inputs
+     */
+    static byte[] hashInputs(final List<AircraftLocation> homeBases, final List<Flight> flights, final String solverSettings) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new DigestOutputStream(NULL_OUTPUT, digest))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(String.valueOf(solverSettings));
+            output.writeInt(homeBases.size());
+            for (AircraftLocation homeBase : homeBases) {
+                output.writeUTF(homeBase.getAircraft().getRegistration());
+                output.writeUTF(String.valueOf(homeBase.getAircraft().getModel()));
+                output.writeUTF(homeBase.getAirport().getCode());
+                output.writeInt(homeBase.getTime());
+            }
+            output.writeInt(flights.size());
+            for (Flight flight : flights) {
+                output.writeUTF(flight.getOrigin().getCode());
+                output.writeUTF(flight.getDestination().getCode());
+                output.writeInt(flight.getDepartureTime());
+                output.writeInt(flight.getFlightLength());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot hash the inputs", e);
+        }
+        return digest.digest();
+    }
+
+    /*
+     * @return the persisted schedule of the inputs with the given hash, or empty, if there is none or it cannot be read
+     */
+    Optional<List<FlightAssignment>> load(final byte[] inputHash, final List<AircraftLocation> homeBases, final List<Flight> flights) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 + HASH_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.warn("Ignoring the schedule snapshot {} of the unknown format", file);
+                return Optional.empty();
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, inputHash)) {
+                log.info("The schedule snapshot {} is of the other inputs or solver settings", file);
+                return Optional.empty();
+            }
+            return Optional.of(readAssignments(buffer, homeBases, flights));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            // Also the truncated file (BufferUnderflowException) and the indexes out of the inputs
+            log.warn("Cannot read the schedule snapshot {}, {}", file, e.toString());
+            return Optional.empty();
+        }
+    }
+
+    private static List<FlightAssignment> readAssignments(final ByteBuffer buffer, final List<AircraftLocation> homeBases, final List<Flight> flights) {
+        Airport[] airports = new Airport[buffer.getInt()];
+        for (int i = 0; i < airports.length; i++) {
+            byte[] code = new byte[buffer.getShort()];
+            buffer.get(code);
+            airports[i] = new Airport(new String(code, StandardCharsets.UTF_8));
+        }
+
+        int count = buffer.getInt();
+        List<FlightAssignment> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int flightIndex = buffer.getInt();
+            Aircraft aircraft = homeBases.get(buffer.getInt()).getAircraft();
+            if (flightIndex == MOVE) {
+                Flight move = new Flight(airports[buffer.getInt()], airports[buffer.getInt()], buffer.getInt(), buffer.getInt());
+                result.add(new FlightAssignment(move, aircraft, true));
+            } else {
+                result.add(new FlightAssignment(flights.get(flightIndex), aircraft));
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException(buffer.remaining() + " bytes after the last assignment");
+        }
+        return result;
+    }
+
+    /*
+     * Persist the schedule of the inputs with the given hash, replacing the previous snapshot.
+     * The failure is only logged, the schedule is built again on the next start then.
+     */
+    void save(final byte[] inputHash, final List<AircraftLocation> homeBases, final List<Flight> flights, final List<FlightAssignment> schedule) {
+        try {
+            ByteBuffer buffer = writeSnapshot(inputHash, homeBases, flights, schedule);
+            Files.createDirectories(file.getParent());
+            Path tempFile = Files.createTempFile(file.getParent(), SNAPSHOT_FILE, ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(true);
+                }
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            log.info("Saved the schedule snapshot {} of {} assignments", file, schedule.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot save the schedule snapshot {}, {}", file, e.toString());
+        }
+    }
+
+    private static ByteBuffer writeSnapshot(final byte[] inputHash, final List<AircraftLocation> homeBases, final List<Flight> flights,
+                                            final List<FlightAssignment> schedule) {
+        Map<Flight, Integer> flightIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < flights.size(); i++) {
+            flightIndexes.put(flights.get(i), i);
+        }
+        Map<String, Integer> aircraftIndexes = new HashMap<>();
+        for (int i = 0; i < homeBases.size(); i++) {
+            aircraftIndexes.putIfAbsent(homeBases.get(i).getAircraft().getRegistration(), i);
+        }
+
+        Map<String, Integer> airportIndexes = new HashMap<>();
+        List<byte[]> airportCodes = new ArrayList<>();
+        int size = 8 + HASH_LENGTH + 4 + 4;
+        for (FlightAssignment assignment : schedule) {
+            size += assignment.isMove() ? 24 : 8;
+            if (assignment.isMove()) {
+                for (Airport airport : Arrays.asList(assignment.getFlight().getOrigin(), assignment.getFlight().getDestination())) {
+                    if (!airportIndexes.containsKey(airport.getCode())) {
+                        airportIndexes.put(airport.getCode(), airportCodes.size());
+                        airportCodes.add(airport.getCode().getBytes(StandardCharsets.UTF_8));
+                        size += 2 + airportCodes.get(airportCodes.size() - 1).length;
+                    }
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).put(inputHash);
+        buffer.putInt(airportCodes.size());
+        for (byte[] code : airportCodes) {
+            buffer.putShort((short) code.length).put(code);
+        }
+        buffer.putInt(schedule.size());
+        for (FlightAssignment assignment : schedule) {
+            Flight flight = assignment.getFlight();
+            Integer aircraftIndex = aircraftIndexes.get(assignment.getAircraft().getRegistration());
+            Integer flightIndex = assignment.isMove() ? Integer.valueOf(MOVE) : flightIndexes.get(flight);
+            if (aircraftIndex == null || flightIndex == null) {
+                throw new IllegalArgumentException("The assignment " + assignment + " is not of the inputs");
+            }
+            buffer.putInt(flightIndex).putInt(aircraftIndex);
+            if (assignment.isMove()) {
+                buffer.putInt(airportIndexes.get(flight.getOrigin().getCode())).putInt(airportIndexes.get(flight.getDestination().getCode()))
+                      .putInt(flight.getDepartureTime()).putInt(flight.getFlightLength());
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,28 @@
+package org.ulitzky.flights.service;
+
+/**
+ * Thrown, when the schedule search reached the configured maximal number of the explored states
+ * or its time limit, before it could either find the schedule or prove, that there is none.
+ */
+public class SearchBudgetExhaustedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long nodesExpanded;
+
+    private final long elapsedMillis;
+
+    public SearchBudgetExhaustedException(final long nodesExpanded, final long elapsedMillis) {
+        super("Search budget exhausted after " + nodesExpanded + " explored states and " + elapsedMillis + " ms, the schedule was not found");
+        this.nodesExpanded = nodesExpanded;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,271 @@
+package org.ulitzky.flights.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Holds everything, that is shared by all the branches of one schedule search run:
+ *    - the solution, as soon as it was found by any branch (the other branches stop then).
+ *      When the moves are minimized, the best solution found so far (the incumbent): the search goes on and the branches,
+ *      that cannot end with less moves than it, are dropped. Same, when the flights may be left uncovered:
+ *      the incumbent is the solution, leaving the least flights uncovered.
+ *    - the cache of the states, that are already known to have no solution
+ *    - the feasibility check, dropping the states, that certainly have no solution, before they are explored
+ *    - the history of the assignments, that led to the dead ends, if the aircrafts are ordered by it
+ *    - the budget of the run: the maximal number of the explored states and the deadline.
+ *      When any of them is exhausted, all the branches stop.
+ *    - the statistics of the run
+ *
+ * A new context is created for every run, it is safe to share it between the parallel search tasks.
+ */
+class SearchContext {
+
+    /*
+     * The clock is checked once per this number of the explored states
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    private final AtomicReference<FlightScheduleBuildingService.FlightScheduleState> foundSolution = new AtomicReference<>();
+
+    private final FailedStatesCache failedStates;
+
+    private final FeasibilityCheck feasibilityCheck;
+
+    private final SearchStatistics statistics;
+
+    private final long maxNodes;
+
+    private final long startNanos;
+
+    private final long timeLimitNanos;
+
+    private final boolean minimizeMoves;
+
+    private final boolean allowUncovered;
+
+    private final Consumer<FlightScheduleBuildingService.FlightScheduleState> improvedSolutions;
+
+    private final AssignmentHistory history;
+
+    private volatile boolean budgetExhausted;
+
+    /*
+     * Whether the solution with the least possible moves is found, so there is nothing to improve
+     */
+    private volatile boolean optimal;
+
+    SearchContext(final FailedStatesCache failedStates) {
+        this(failedStates, 0, 0);
+    }
+
+    /*
+     * @param maxNodes maximal number of the explored states, 0 for no limit
+     * @param timeLimitMillis time limit of the run, 0 for no limit
+     */
+    SearchContext(final FailedStatesCache failedStates, final long maxNodes, final long timeLimitMillis) {
+        this(failedStates, null, new SearchStatistics(0), maxNodes, timeLimitMillis);
+    }
+
+    /*
+     * @param feasibilityCheck the check of every explored state, null for no check
+     */
+    SearchContext(final FailedStatesCache failedStates, final FeasibilityCheck feasibilityCheck, final SearchStatistics statistics,
+                  final long maxNodes, final long timeLimitMillis) {
+        this(failedStates, feasibilityCheck, statistics, maxNodes, timeLimitMillis, false);
+    }
+
+    /*
+     * @param minimizeMoves whether to search for the solution with the least moves. The feasibility check is required then,
+     * it gives the lower bound of the moves. The failed states cache must be disabled: the state, dropped by the bound,
+     * may still have the solution, when it is reached with less moves.
+     */
+    SearchContext(final FailedStatesCache failedStates, final FeasibilityCheck feasibilityCheck, final SearchStatistics statistics,
+                  final long maxNodes, final long timeLimitMillis, final boolean minimizeMoves) {
+        this(failedStates, feasibilityCheck, statistics, maxNodes, timeLimitMillis, minimizeMoves, false, solution -> { }, null);
+    }
+
+    /*
+     * @param allowUncovered whether the flights may be left uncovered, searching for the solution, that leaves the least of them.
+     * The failed states cache must be disabled then, as for minimizing the moves.
+     * @param improvedSolutions gets every solution, that is better, than the ones published before it
+     * @param history the history of the dead ends to fill, null, if it is not used
+     */
+    SearchContext(final FailedStatesCache failedStates, final FeasibilityCheck feasibilityCheck, final SearchStatistics statistics,
+                  final long maxNodes, final long timeLimitMillis, final boolean minimizeMoves, final boolean allowUncovered,
+                  final Consumer<FlightScheduleBuildingService.FlightScheduleState> improvedSolutions, final AssignmentHistory history) {
+        this.minimizeMoves = minimizeMoves;
+        this.allowUncovered = allowUncovered;
+        this.improvedSolutions = improvedSolutions;
+        this.history = history;
+        this.failedStates = failedStates;
+        this.feasibilityCheck = feasibilityCheck;
+        this.statistics = statistics;
+        this.maxNodes = maxNodes;
+        this.startNanos = System.nanoTime();
+        this.timeLimitNanos = TimeUnit.MILLISECONDS.toNanos(timeLimitMillis);
+    }
+
+    boolean isSolved() {
+        return foundSolution.get() != null;
+    }
+
+    /*
+     * @return true, if the search has to stop: the solution is found or the budget is exhausted
+     */
+    boolean isStopped() {
+        return budgetExhausted || (!isOptimizing() && isSolved()) || optimal;
+    }
+
+    /*
+     * @return true, if the search goes on after the first solution, looking for the better one
+     */
+    boolean isOptimizing() {
+        return minimizeMoves || allowUncovered;
+    }
+
+    boolean isAllowingUncovered() {
+        return allowUncovered;
+    }
+
+    /*
+     * Count the explored state against the budget
+     *
+     * @return false, if the budget is exhausted and the state must not be explored
+     */
+    boolean countNode(final int depth) {
+        long nodes = statistics.countNode(depth);
+        if ((maxNodes > 0 && nodes > maxNodes)
+                || (timeLimitNanos > 0 && nodes % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - startNanos > timeLimitNanos)) {
+            budgetExhausted = true;
+        }
+        return !budgetExhausted;
+    }
+
+    /*
+     * @return false, if the state certainly has no solution, or, when the moves are minimized, no solution with less moves,
+     * than the incumbent has, and must not be explored.
+     * When the flights may be left uncovered, false, if the state cannot lead to the solution, leaving less flights uncovered, than the incumbent.
+     */
+    boolean isFeasible(final FlightScheduleBuildingService.FlightScheduleState state) {
+        if (allowUncovered) {
+            return isCoverageImprovable(state);
+        }
+        if (feasibilityCheck == null) {
+            return true;
+        }
+
+        int movesLowerBound = feasibilityCheck.calcMovesLowerBound(state);
+        if (movesLowerBound != FeasibilityCheck.INFEASIBLE && (!minimizeMoves || improvesSolution(state.getMovesCount() + movesLowerBound))) {
+            return true;
+        }
+        statistics.countPruned();
+        return false;
+    }
+
+    /*
+     * The infeasible state has to leave at least one more flight uncovered
+     */
+    private boolean isCoverageImprovable(final FlightScheduleBuildingService.FlightScheduleState state) {
+        FlightScheduleBuildingService.FlightScheduleState solution = foundSolution.get();
+        if (solution == null) {
+            return true;
+        }
+        int uncoveredLowerBound = state.getUncoveredFlightsCount();
+        if (uncoveredLowerBound < solution.getUncoveredFlightsCount() && feasibilityCheck != null
+                && feasibilityCheck.calcMovesLowerBound(state) == FeasibilityCheck.INFEASIBLE) {
+            uncoveredLowerBound++;
+        }
+        if (uncoveredLowerBound < solution.getUncoveredFlightsCount()) {
+            return true;
+        }
+        statistics.countPruned();
+        return false;
+    }
+
+    /*
+     * @return the minimal number of the moves of any solution of the state, or FeasibilityCheck.INFEASIBLE, if it has none
+     */
+    int calcMovesLowerBound(final FlightScheduleBuildingService.FlightScheduleState state) {
+        return (feasibilityCheck == null) ? 0 : feasibilityCheck.calcMovesLowerBound(state);
+    }
+
+    private boolean improvesSolution(final int moves) {
+        FlightScheduleBuildingService.FlightScheduleState solution = foundSolution.get();
+        return solution == null || moves < solution.getMovesCount();
+    }
+
+    /*
+     * @return true, if the offered solution leaves less flights uncovered or, when the moves are minimized, has less moves, than the current one
+     */
+    private boolean isBetter(final FlightScheduleBuildingService.FlightScheduleState offered, final FlightScheduleBuildingService.FlightScheduleState current) {
+        if (current == null) {
+            return true;
+        }
+        return allowUncovered ? offered.getUncoveredFlightsCount() < current.getUncoveredFlightsCount()
+                              : offered.getMovesCount() < current.getMovesCount();
+    }
+
+    /*
+     * Publish the solution. Only the first published solution is kept, or, when the moves are minimized, the one with the least moves,
+     * or, when the flights may be left uncovered, the one leaving the least of them.
+     */
+    void publishSolution(final FlightScheduleBuildingService.FlightScheduleState solution) {
+        if (!isOptimizing()) {
+            if (foundSolution.compareAndSet(null, solution)) {
+                statistics.solutionFound(solution.getMovesCount());
+            }
+            return;
+        }
+
+        FlightScheduleBuildingService.FlightScheduleState previous = foundSolution.getAndAccumulate(solution,
+                (current, offered) -> isBetter(offered, current) ? offered : current);
+        if (isBetter(solution, previous)) {
+            statistics.solutionFound(solution.getMovesCount());
+            if (allowUncovered) {
+                statistics.setUncoveredFlights(solution.getUncoveredFlightsCount());
+                optimal = solution.getUncoveredFlightsCount() <= statistics.getUncoveredLowerBound();
+            } else if (solution.getMovesCount() <= statistics.getMovesLowerBound()) {
+                optimal = true;
+            }
+            improvedSolutions.accept(solution);
+        }
+    }
+
+    /*
+     * Remember, that the state led to the dead end, in the history of its last assignment
+     */
+    void countDeadEnd(final FlightScheduleBuildingService.FlightScheduleState state) {
+        if (history != null && state.getLastFlightIndex() != FlightScheduleBuildingService.FlightScheduleState.NO_FLIGHT) {
+            history.countFailure(state.getLastFlightIndex(), state.getLastAircraftSlot());
+        }
+    }
+
+    AssignmentHistory getHistory() {
+        return history;
+    }
+
+    FlightScheduleBuildingService.FlightScheduleState getSolution() {
+        return foundSolution.get();
+    }
+
+    FailedStatesCache getFailedStates() {
+        return failedStates;
+    }
+
+    boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    long getNodesExpanded() {
+        return statistics.getNodesExpanded();
+    }
+
+    long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
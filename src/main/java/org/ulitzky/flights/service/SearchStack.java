@@ -0,0 +1,103 @@
+package org.ulitzky.flights.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Explicit stack of the iterative schedule search, replacing the recursion: one frame per search tree level.
+ *
+ * The frames (and their lists of children states) are reused, when the search goes up and down the tree,
+ * and the whole stack is reused by the following search runs of the same thread.
+ */
+class SearchStack {
+
+    /*
+     * The search tree node on the stack: the state, the flight to schedule in it and the cursor
+     * over its children states, that are built lazily - first by the aircrafts already at the origin, then by the moved ones,
+     * and at last, when the flights may be left uncovered, without the flight.
+     */
+    static class Frame {
+        FlightScheduleBuildingService.FlightScheduleState state;
+
+        StateFingerprint fingerprint;
+
+        int flight;
+
+        boolean movesExpanded;
+
+        boolean uncoveredExpanded;
+
+        final List<FlightScheduleBuildingService.FlightScheduleState> children = new ArrayList<>();
+
+        int childPos;
+
+        /*
+         * @return the next child state, that is already built, or null, if more children have to be built
+         */
+        FlightScheduleBuildingService.FlightScheduleState takeBuiltChild() {
+            return (childPos < children.size()) ? children.get(childPos++) : null;
+        }
+
+        void clearChildren() {
+            children.clear();
+            childPos = 0;
+        }
+    }
+
+    private Frame[] frames = new Frame[64];
+
+    private int size;
+
+    Frame push(final FlightScheduleBuildingService.FlightScheduleState state, final StateFingerprint fingerprint, final int flight) {
+        if (size == frames.length) {
+            Frame[] newFrames = new Frame[frames.length * 2];
+            System.arraycopy(frames, 0, newFrames, 0, size);
+            frames = newFrames;
+        }
+        Frame frame = frames[size];
+        if (frame == null) {
+            frame = new Frame();
+            frames[size] = frame;
+        }
+        size++;
+
+        frame.state = state;
+        frame.fingerprint = fingerprint;
+        frame.flight = flight;
+        frame.movesExpanded = false;
+        frame.uncoveredExpanded = false;
+        frame.clearChildren();
+        return frame;
+    }
+
+    Frame peek() {
+        return frames[size - 1];
+    }
+
+    void pop() {
+        release(frames[--size]);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int depth() {
+        return size;
+    }
+
+    /*
+     * Drop all the frames, keeping them for the reuse
+     */
+    void clear() {
+        while (size > 0) {
+            pop();
+        }
+    }
+
+    private static void release(final Frame frame) {
+        frame.state = null;
+        frame.fingerprint = null;
+        frame.clearChildren();
+    }
+}
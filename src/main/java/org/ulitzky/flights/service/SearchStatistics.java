@@ -0,0 +1,224 @@
+package org.ulitzky.flights.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of one schedule search run, updated by all its branches:
+ *    - the explored states, the states dropped by the feasibility check and the backtracks (subtrees explored without the solution)
+ *    - the maximal depth of the search tree, that is the number of the flights, covered by the state
+ *    - the children states, built per depth, the branching factor is their number per expanded state,
+ *      and how many of them move the aircraft
+ *    - the time to the first solution
+ *    - the moves of the best solution and the lower bound of the moves of any solution, their difference is the optimality gap
+ *    - the flights, left uncovered by the best solution, when the flights may be left uncovered
+ */
+public class SearchStatistics {
+
+    private static final long NO_SOLUTION = -1;
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong nodesExpanded = new AtomicLong();
+
+    private final AtomicLong statesPruned = new AtomicLong();
+
+    private final AtomicLong backtracks = new AtomicLong();
+
+    private final AtomicLong moveBranches = new AtomicLong();
+
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    private final AtomicLong firstSolutionNanos = new AtomicLong(NO_SOLUTION);
+
+    private final AtomicInteger bestMoves = new AtomicInteger((int) NO_SOLUTION);
+
+    private volatile int movesLowerBound;
+
+    private volatile int uncoveredFlights;
+
+    private volatile int uncoveredLowerBound;
+
+    private final AtomicLongArray parentsPerDepth;
+
+    private final AtomicLongArray childrenPerDepth;
+
+    /*
+     * @param maxDepth the depth of the complete state, that is the number of the flights to cover
+     */
+    SearchStatistics(final int maxDepth) {
+        this.parentsPerDepth = new AtomicLongArray(maxDepth + 1);
+        this.childrenPerDepth = new AtomicLongArray(maxDepth + 1);
+    }
+
+    /*
+     * @return the number of the explored states, including this one
+     */
+    long countNode(final int depth) {
+        if (depth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+        return nodesExpanded.incrementAndGet();
+    }
+
+    void countExpanded(final int depth) {
+        if (depth < parentsPerDepth.length()) {
+            parentsPerDepth.incrementAndGet(depth);
+        }
+    }
+
+    void countChildren(final int depth, final int count, final boolean moved) {
+        if (depth < childrenPerDepth.length()) {
+            childrenPerDepth.addAndGet(depth, count);
+        }
+        if (moved) {
+            moveBranches.addAndGet(count);
+        }
+    }
+
+    void countPruned() {
+        statesPruned.incrementAndGet();
+    }
+
+    void countBacktrack() {
+        backtracks.incrementAndGet();
+    }
+
+    /*
+     * @param moves the number of the moves of the found solution
+     */
+    void solutionFound(final int moves) {
+        firstSolutionNanos.compareAndSet(NO_SOLUTION, System.nanoTime() - startNanos);
+        bestMoves.accumulateAndGet(moves, (best, found) -> (best == NO_SOLUTION) ? found : Math.min(best, found));
+    }
+
+    void setMovesLowerBound(final int movesLowerBound) {
+        this.movesLowerBound = movesLowerBound;
+    }
+
+    void setUncoveredFlights(final int uncoveredFlights) {
+        this.uncoveredFlights = uncoveredFlights;
+    }
+
+    void setUncoveredLowerBound(final int uncoveredLowerBound) {
+        this.uncoveredLowerBound = uncoveredLowerBound;
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded.get();
+    }
+
+    public long getStatesPruned() {
+        return statesPruned.get();
+    }
+
+    public long getBacktracks() {
+        return backtracks.get();
+    }
+
+    public long getMoveBranches() {
+        return moveBranches.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    /*
+     * @return the depth of the complete state, the search progress is the reached depth relative to it
+     */
+    public int getTargetDepth() {
+        return parentsPerDepth.length() - 1;
+    }
+
+    /*
+     * @return the time from the start of the run to the first solution in milliseconds, or -1, if no solution was found
+     */
+    public long getTimeToFirstSolutionMillis() {
+        long nanos = firstSolutionNanos.get();
+        return (nanos == NO_SOLUTION) ? NO_SOLUTION : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /*
+     * @return the number of the moves of the best found solution, or -1, if no solution was found
+     */
+    public int getMoves() {
+        return bestMoves.get();
+    }
+
+    /*
+     * @return the number of the moves, that no solution can have less of
+     */
+    public int getMovesLowerBound() {
+        return movesLowerBound;
+    }
+
+    /*
+     * @return how many moves the best found solution may have more than the optimal one, 0 for the proven optimal solution,
+     * or -1, if no solution was found
+     */
+    public int getOptimalityGap() {
+        int moves = getMoves();
+        return (moves == NO_SOLUTION) ? (int) NO_SOLUTION : Math.max(0, moves - movesLowerBound);
+    }
+
+    /*
+     * @return the number of the flights, left uncovered by the best found solution
+     */
+    public int getUncoveredFlights() {
+        return uncoveredFlights;
+    }
+
+    /*
+     * @return the number of the flights, that any solution leaves uncovered at least
+     */
+    public int getUncoveredLowerBound() {
+        return uncoveredLowerBound;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /*
+     * @return the average number of the children of the expanded state at the given depth, 0, if no state was expanded there
+     */
+    public double getBranchingFactor(final int depth) {
+        long parents = (depth < parentsPerDepth.length()) ? parentsPerDepth.get(depth) : 0;
+        return (parents == 0) ? 0 : (double) childrenPerDepth.get(depth) / parents;
+    }
+
+    /*
+     * @return the average number of the children of the expanded state over all depths
+     */
+    public double getBranchingFactor() {
+        long parents = 0;
+        long children = 0;
+        for (int depth = 0; depth < parentsPerDepth.length(); depth++) {
+            parents += parentsPerDepth.get(depth);
+            children += childrenPerDepth.get(depth);
+        }
+        return (parents == 0) ? 0 : (double) children / parents;
+    }
+
+    /*
+     * @return the branching factor of every depth, down to the deepest explored one
+     */
+    public double[] getBranchingFactors() {
+        double[] result = new double[Math.min(getMaxDepth() + 1, parentsPerDepth.length())];
+        for (int depth = 0; depth < result.length; depth++) {
+            result[depth] = getBranchingFactor(depth);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes: %d; pruned: %d; backtracks: %d; max depth: %d; move branches: %d; branching factor: %.2f; " +
+                             "time to first solution: %d ms; moves: %d; optimality gap: %d; uncovered flights: %d; elapsed: %d ms",
+                             getNodesExpanded(), getStatesPruned(), getBacktracks(), getMaxDepth(), getMoveBranches(), getBranchingFactor(),
+                             getTimeToFirstSolutionMillis(), getMoves(), getOptimalityGap(), getUncoveredFlights(), getElapsedMillis());
+    }
+}
@@ -0,0 +1,18 @@
+package org.ulitzky.flights.service;
+
+/**
+ * The algorithms, FlightScheduleBuildingService can build the schedule with (property "solver.engine")
+ */
+public enum SolverEngine {
+
+    /*
+     * Depth-first search over all the possible assignments, moving the free aircrafts to the other airports if needed
+     */
+    BACKTRACKING,
+
+    /*
+     * Maximum matching on the flight connection graph, that finds the schedule without moving the aircrafts in polynomial time.
+     * If there is no such schedule, the backtracking search is used.
+     */
+    MATCHING
+}
@@ -0,0 +1,52 @@
+package org.ulitzky.flights.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes the statistics of the latest schedule search run on the actuator metrics endpoint (/metrics), as "solver.*" metrics.
+ * The branching factor is given per depth of the search tree as "solver.branching-factor.depth.N".
+ */
+@Component
+public class SolverMetrics implements PublicMetrics {
+
+    @Autowired
+    private FlightScheduleBuildingService schedulerBuilder;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        SearchStatistics statistics = schedulerBuilder.getLastRunStatistics();
+        FailedStatesCache failedStates = schedulerBuilder.getFailedStatesCache();
+
+        List<Metric<?>> result = new ArrayList<>();
+        result.add(new Metric<>("solver.nodes-expanded", statistics.getNodesExpanded()));
+        result.add(new Metric<>("solver.states-pruned", statistics.getStatesPruned()));
+        result.add(new Metric<>("solver.backtracks", statistics.getBacktracks()));
+        result.add(new Metric<>("solver.max-depth", statistics.getMaxDepth()));
+        result.add(new Metric<>("solver.move-branches", statistics.getMoveBranches()));
+        result.add(new Metric<>("solver.time-to-first-solution-ms", statistics.getTimeToFirstSolutionMillis()));
+        result.add(new Metric<>("solver.moves", statistics.getMoves()));
+        result.add(new Metric<>("solver.moves-lower-bound", statistics.getMovesLowerBound()));
+        result.add(new Metric<>("solver.optimality-gap", statistics.getOptimalityGap()));
+        result.add(new Metric<>("solver.uncovered-flights", statistics.getUncoveredFlights()));
+        result.add(new Metric<>("solver.branching-factor", statistics.getBranchingFactor()));
+        double[] branchingFactors = statistics.getBranchingFactors();
+        for (int depth = 0; depth < branchingFactors.length; depth++) {
+            result.add(new Metric<>("solver.branching-factor.depth." + depth, branchingFactors[depth]));
+        }
+        result.add(new Metric<>("solver.failed-states.hits", failedStates.getHits()));
+        result.add(new Metric<>("solver.failed-states.misses", failedStates.getMisses()));
+        result.add(new Metric<>("solver.failed-states.size", failedStates.getSize()));
+        return result;
+    }
+
+    void setSchedulerBuilder(final FlightScheduleBuildingService schedulerBuilder) {
+        this.schedulerBuilder = schedulerBuilder;
+    }
+}
@@ -0,0 +1,65 @@
+package org.ulitzky.flights.service;
+
+import org.ulitzky.flights.model.AircraftLocation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Canonical key of the search state: locations of all the aircrafts (airport and the time it is ready there)
+ * and the set of the flights, that are still to be covered.
+ *
+ * Two states with equal fingerprints have the same continuations, no matter which flights were scheduled
+ * (and in which order) to reach them.
+ */
+final class StateFingerprint {
+
+    private final String[] airports;
+
+    private final int[] readyTimes;
+
+    private final BitSet flightsToCover;
+
+    private final int hash;
+
+    /*
+     * The aircraft slots have the same order in all the states of the search run, the states never change the bit set of the flights.
+     */
+    StateFingerprint(final AircraftLocation[] aircraftLocations, final BitSet flightsToCover) {
+        int size = aircraftLocations.length;
+        airports = new String[size];
+        readyTimes = new int[size];
+        for (int i = 0; i < size; i++) {
+            AircraftLocation location = aircraftLocations[i];
+            airports[i] = location.getAirport().getCode();
+            readyTimes[i] = location.getTime();
+        }
+
+        this.flightsToCover = flightsToCover;
+
+        int result = Arrays.hashCode(airports);
+        result = 31 * result + Arrays.hashCode(readyTimes);
+        result = 31 * result + flightsToCover.hashCode();
+        hash = result;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StateFingerprint)) {
+            return false;
+        }
+        StateFingerprint other = (StateFingerprint) o;
+        return hash == other.hash
+                && Arrays.equals(readyTimes, other.readyTimes)
+                && Arrays.equals(airports, other.airports)
+                && flightsToCover.equals(other.flightsToCover);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
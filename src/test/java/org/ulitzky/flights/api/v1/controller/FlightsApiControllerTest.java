@@ -0,0 +1,229 @@
+package org.ulitzky.flights.api.v1.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.service.FlightPlanPage;
+import org.ulitzky.flights.service.FlightsService;
+import org.ulitzky.flights.service.ScheduleNotReadyException;
+import org.ulitzky.flights.service.ScheduleReadModel;
+import org.ulitzky.flights.service.ScheduleRepairException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlightsApiControllerTest {
+
+    @InjectMocks
+    private FlightsApiController controller;
+
+    @Mock
+    private FlightsService flightsService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private ScheduleReadModel schedule;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        FlightAssignmentResource resource = new FlightAssignmentResource();
+        resource.setOrigin("MUC");
+        resource.setDestination("TXL");
+
+        when(flightsService.getReadModel()).thenReturn(schedule);
+        when(schedule.getVersion()).thenReturn(42L);
+        when(schedule.getFlightPlan(anyString())).thenReturn(Collections.singletonList(resource));
+        when(schedule.getOperationsPlan(anyString())).thenReturn(Collections.emptyList());
+        when(schedule.getSerializedResponse(anyString(), any())).thenAnswer(invocation -> invocation.getArgumentAt(1, Supplier.class).get());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    public void testGetFlightPlanWithETag() throws Exception {
+        mockMvc.perform(get("/flightplan").param("airport", "muc"))
+               .andExpect(status().isOk())
+               .andExpect(header().string("ETag", "\"42\""))
+               .andExpect(jsonPath("$[0].origin").value("MUC"));
+
+        verify(schedule).getSerializedResponse(eq("flightplan:MUC"), any());
+    }
+
+    @Test
+    public void testGetFlightPlanNotModified() throws Exception {
+        mockMvc.perform(get("/flightplan").param("airport", "MUC").header("If-None-Match", "\"42\""))
+               .andExpect(status().isNotModified());
+
+        verify(schedule, never()).getSerializedResponse(anyString(), any());
+    }
+
+    @Test
+    public void testGetFlightPlanChangedVersion() throws Exception {
+        mockMvc.perform(get("/flightplan").param("airport", "MUC").header("If-None-Match", "\"41\""))
+               .andExpect(status().isOk())
+               .andExpect(header().string("ETag", "\"42\""));
+    }
+
+    @Test
+    public void testGetOperationsPlanEmptyNotCached() throws Exception {
+        mockMvc.perform(get("/operationsplan").param("registration", "FL-0009"))
+               .andExpect(status().isOk())
+               .andExpect(content().string("[]"));
+
+        verify(schedule, never()).getSerializedResponse(anyString(), any());
+    }
+
+    @Test
+    public void testScheduleNotReady() throws Exception {
+        when(flightsService.getReadModel()).thenThrow(new ScheduleNotReadyException(FlightsService.BuildState.BUILDING));
+        controller.setRetryAfterSeconds(5);
+
+        mockMvc.perform(get("/flightplan"))
+               .andExpect(status().isServiceUnavailable())
+               .andExpect(header().string("Retry-After", "5"));
+    }
+
+    @Test
+    public void testCancelFlight() throws Exception {
+        when(flightsService.cancelFlight(eq("MUC"), eq("TXL"), anyInt())).thenReturn(43L);
+
+        mockMvc.perform(delete("/flights").param("origin", "MUC").param("destination", "TXL").param("departure", "10:00"))
+               .andExpect(status().isNoContent())
+               .andExpect(header().string("ETag", "\"43\""));
+    }
+
+    @Test
+    public void testRetimeFlightConflict() throws Exception {
+        when(flightsService.retimeFlight(anyString(), anyString(), anyInt(), anyInt())).thenThrow(new ScheduleRepairException("Cannot repair"));
+
+        mockMvc.perform(patch("/flights").param("origin", "MUC").param("destination", "TXL").param("departure", "10:00").param("newDeparture", "11:00"))
+               .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void testAddFlightInvalidTime() throws Exception {
+        mockMvc.perform(post("/flights").param("origin", "MUC").param("destination", "TXL").param("departure", "1000").param("duration", "01:00"))
+               .andExpect(status().isBadRequest());
+
+        verify(flightsService, never()).addFlight(any());
+    }
+
+    @Test
+    public void testGetUncoveredFlights() throws Exception {
+        FlightAssignmentResource resource = new FlightAssignmentResource();
+        resource.setOrigin("LHR");
+        resource.setDestination("TXL");
+        when(schedule.getUncoveredFlightPlan()).thenReturn(Collections.singletonList(resource));
+
+        mockMvc.perform(get("/flightplan/uncovered"))
+               .andExpect(status().isOk())
+               .andExpect(header().string("ETag", "\"42\""))
+               .andExpect(jsonPath("$[0].origin").value("LHR"))
+               .andExpect(jsonPath("$[0].equipment").isEmpty());
+    }
+
+    @Test
+    public void testGetFlightPlanPage() throws Exception {
+        FlightAssignmentResource resource = new FlightAssignmentResource();
+        resource.setOrigin("MUC");
+        when(schedule.getFlightPlanPage(eq("MUC"), anyInt(), eq(Integer.MAX_VALUE), isNull(String.class), eq(1)))
+                .thenReturn(new FlightPlanPage(Collections.singletonList(resource), "next"));
+
+        mockMvc.perform(get("/flightplan").param("airport", "MUC").param("from", "10:00").param("limit", "1"))
+               .andExpect(status().isOk())
+               .andExpect(header().string(FlightsApiController.NEXT_CURSOR_HEADER, "next"))
+               .andExpect(jsonPath("$[0].origin").value("MUC"));
+
+        verify(schedule, never()).getSerializedResponse(anyString(), any());
+    }
+
+    @Test
+    public void testGetFlightPlanPageInvalidLimit() throws Exception {
+        when(schedule.getFlightPlanPage(any(), anyInt(), anyInt(), any(), eq(0))).thenThrow(new IllegalArgumentException("Invalid limit 0"));
+
+        mockMvc.perform(get("/flightplan").param("limit", "0"))
+               .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetFlightPlanPageETagWithRange() throws Exception {
+        int fromTime = Flight.parseDepartureTime("2018-03-01 10:00");
+        String eTag = "\"42:" + fromTime + "-" + Integer.MAX_VALUE + "\"";
+        when(schedule.getFlightPlanPage(any(), eq(fromTime), eq(Integer.MAX_VALUE), any(), eq(1)))
+                .thenReturn(new FlightPlanPage(Collections.emptyList(), null));
+
+        mockMvc.perform(get("/flightplan").param("from", "2018-03-01 10:00").param("limit", "1").header("If-None-Match", "\"42\""))
+               .andExpect(status().isOk())
+               .andExpect(header().string("ETag", eTag));
+        mockMvc.perform(get("/flightplan").param("from", "2018-03-01 10:00").param("limit", "1").header("If-None-Match", eTag))
+               .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void testGetFlightPlanPageInvalidNotModified() throws Exception {
+        when(schedule.getFlightPlanPage(any(), anyInt(), anyInt(), any(), eq(0))).thenThrow(new IllegalArgumentException("Invalid limit 0"));
+
+        mockMvc.perform(get("/flightplan").param("limit", "0").header("If-None-Match", "\"42\""))
+               .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/flightplan").param("from", "25:00").header("If-None-Match", "\"42\""))
+               .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetOperationsPlansStreamed() throws Exception {
+        OperatingInstructionResource instruction = new OperatingInstructionResource();
+        instruction.setOrigin("MUC");
+        when(schedule.getOperationsPlan("FL-0001")).thenReturn(Collections.singletonList(instruction));
+
+        MvcResult result = mockMvc.perform(get("/operationsplans").param("registrations", "FL-0001,FL-0009"))
+                                  .andExpect(request().asyncStarted())
+                                  .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk());
+
+        // The body is streamed to the response of the original request
+        JsonNode plans = objectMapper.readTree(result.getResponse().getContentAsString());
+        assertEquals("MUC", plans.get("FL-0001").get(0).get("origin").asText());
+        assertEquals(0, plans.get("FL-0009").size());
+    }
+
+    @Test
+    public void testGetOperationsPlansOfAllAircrafts() throws Exception {
+        when(schedule.getRegistrations()).thenReturn(Arrays.asList("FL-0001", "FL-0002"));
+
+        MvcResult result = mockMvc.perform(get("/operationsplans").param("registrations", FlightsApiController.ALL_REGISTRATIONS))
+                                  .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+               .andExpect(status().isOk());
+
+        assertEquals("{\"FL-0001\":[],\"FL-0002\":[]}", result.getResponse().getContentAsString());
+    }
+}
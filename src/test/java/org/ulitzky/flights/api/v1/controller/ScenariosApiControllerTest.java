@@ -0,0 +1,109 @@
+package org.ulitzky.flights.api.v1.controller;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.ulitzky.flights.service.ScenarioJob;
+import org.ulitzky.flights.service.ScenarioNotFoundException;
+import org.ulitzky.flights.service.ScenarioRejectedException;
+import org.ulitzky.flights.service.ScenarioService;
+
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScenariosApiControllerTest {
+
+    private static final String SCENARIO = "{\"homeBases\":[{\"registration\":\"FL-0001\",\"model\":\"737\",\"airport\":\"MUC\"}],"
+            + "\"flights\":[{\"origin\":\"MUC\",\"destination\":\"TXL\",\"departure\":\"10:00\",\"duration\":\"01:00\"}]}";
+
+    @InjectMocks
+    private ScenariosApiController controller;
+
+    @Mock
+    private ScenarioService scenarioService;
+
+    @Mock
+    private ScenarioJob job;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        when(job.getId()).thenReturn("42");
+        when(job.getStatus()).thenReturn(ScenarioJob.Status.QUEUED);
+        when(job.getSolveMillis()).thenReturn(-1L);
+        when(job.getWaitMillis(anyLong())).thenReturn(0L);
+
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    public void testSubmitScenario() throws Exception {
+        when(scenarioService.submit(any(List.class), any(List.class))).thenReturn(job);
+
+        mockMvc.perform(post("/scenarios").contentType(MediaType.APPLICATION_JSON).content(SCENARIO))
+               .andExpect(status().isAccepted())
+               .andExpect(header().string("Location", "/scenarios/42"))
+               .andExpect(jsonPath("$.status").value("QUEUED"))
+               .andExpect(jsonPath("$.flightPlan").doesNotExist());
+    }
+
+    @Test
+    public void testSubmitScenarioQueueFull() throws Exception {
+        when(scenarioService.submit(any(List.class), any(List.class))).thenThrow(new ScenarioRejectedException("The scenario queue is full", false));
+
+        mockMvc.perform(post("/scenarios").contentType(MediaType.APPLICATION_JSON).content(SCENARIO))
+               .andExpect(status().isTooManyRequests())
+               .andExpect(header().string("Retry-After", "10"));
+    }
+
+    @Test
+    public void testSubmitScenarioShuttingDown() throws Exception {
+        when(scenarioService.submit(any(List.class), any(List.class))).thenThrow(new ScenarioRejectedException("Shutting down", true));
+
+        mockMvc.perform(post("/scenarios").contentType(MediaType.APPLICATION_JSON).content(SCENARIO))
+               .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void testSubmitInvalidScenario() throws Exception {
+        mockMvc.perform(post("/scenarios").contentType(MediaType.APPLICATION_JSON).content(SCENARIO.replace("\"duration\":\"01:00\"", "\"duration\":null")))
+               .andExpect(status().isBadRequest());
+
+        verify(scenarioService, never()).submit(any(List.class), any(List.class));
+    }
+
+    @Test
+    public void testGetScenario() throws Exception {
+        when(scenarioService.getJob("42")).thenReturn(job);
+        when(job.getStatus()).thenReturn(ScenarioJob.Status.FAILED);
+        when(job.getSolveMillis()).thenReturn(5L);
+        when(job.getError()).thenReturn("Cannot build valid schedule");
+
+        mockMvc.perform(get("/scenarios/42"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.status").value("FAILED"))
+               .andExpect(jsonPath("$.solveMillis").value(5))
+               .andExpect(jsonPath("$.error").value("Cannot build valid schedule"));
+    }
+
+    @Test
+    public void testGetUnknownScenario() throws Exception {
+        when(scenarioService.getJob("43")).thenThrow(new ScenarioNotFoundException("No scenario 43"));
+
+        mockMvc.perform(get("/scenarios/43"))
+               .andExpect(status().isNotFound());
+    }
+}
@@ -3,12 +3,14 @@ package org.ulitzky.flights.model;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.assertj.core.util.DateUtil;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 
@@ -19,15 +21,24 @@ public class FlightTest {
 
     @Test
     public void testParseDepartureTimeValid() {
-        Date parsedDate = Flight.parseDepartureTime("02:30");
-        Date now = new Date();
+        LocalDateTime parsedTime = toLocalDateTime(Flight.parseDepartureTime("02:30"));
 
-        Calendar parsedCal = Calendar.getInstance();
-        parsedCal.setTime(parsedDate);
-        assertEquals(2, parsedCal.get(Calendar.HOUR_OF_DAY));
-        assertEquals(30, parsedCal.get(Calendar.MINUTE));
+        assertEquals(2, parsedTime.getHour());
+        assertEquals(30, parsedTime.getMinute());
 
-        assertEquals(DateUtil.truncateTime(now), DateUtil.truncateTime(parsedDate));
+        assertEquals(LocalDate.now(), parsedTime.toLocalDate());
+    }
+
+    @Test
+    public void testParseDepartureTimeDated() {
+        LocalDateTime parsedTime = toLocalDateTime(Flight.parseDepartureTime("2018-04-21 02:30"));
+
+        assertEquals(LocalDateTime.of(2018, 4, 21, 2, 30), parsedTime);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseDepartureTimeInvalidDate() {
+        Flight.parseDepartureTime("2018-13-21 02:30");
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -41,6 +52,11 @@ public class FlightTest {
 
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseDepartureTimeInvalidHour() {
+        Flight.parseDepartureTime("25:00");
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testParseDepartureTimeInvalidStringLength() {
         Flight.parseDepartureTime("1:00");
@@ -82,22 +98,18 @@ public class FlightTest {
         assertEquals("MUC", flight.getDestination().getCode());
         assertEquals(120, flight.getFlightLength());
 
-        Date now = new Date();
+        LocalDateTime departureTime = toLocalDateTime(flight.getDepartureTime());
 
-        Calendar departureCal = Calendar.getInstance();
-        departureCal.setTime(flight.getDepartureTime());
+        assertEquals(LocalDate.now(), departureTime.toLocalDate());
+        assertEquals(20, departureTime.getHour());
+        assertEquals(30, departureTime.getMinute());
 
-        assertEquals(DateUtil.truncateTime(now), DateUtil.truncateTime(departureCal.getTime()));
-        assertEquals(20, departureCal.get(Calendar.HOUR_OF_DAY));
-        assertEquals(30, departureCal.get(Calendar.MINUTE));
 
+        LocalDateTime arrivalTime = toLocalDateTime(flight.getScheduledArrivalTime());
 
-        Calendar arrivalCal = Calendar.getInstance();
-        arrivalCal.setTime(flight.getScheduledArrivalTime());
-
-        assertEquals(DateUtil.truncateTime(now), DateUtil.truncateTime(arrivalCal.getTime()));
-        assertEquals(22, arrivalCal.get(Calendar.HOUR_OF_DAY));
-        assertEquals(30, arrivalCal.get(Calendar.MINUTE));
+        assertEquals(LocalDate.now(), arrivalTime.toLocalDate());
+        assertEquals(22, arrivalTime.getHour());
+        assertEquals(30, arrivalTime.getMinute());
     }
 
 
@@ -107,4 +119,8 @@ public class FlightTest {
         Flight flight = new Flight(record);
     }
 
+    private static LocalDateTime toLocalDateTime(final int time) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(TimeUnit.MINUTES.toSeconds(time)), ZoneId.systemDefault());
+    }
+
 }
@@ -0,0 +1,80 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ulitzky.flights.model.Flight;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvInputLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadFromFileSystem() throws IOException {
+        File file = folder.newFile("flights.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write("10:00,MUC,TXL,01:00\n");
+            }
+        }
+
+        List<Flight> flights = new ArrayList<>();
+        CsvInputLoader.Report report = CsvInputLoader.load(CsvInputLoader.FILE_PREFIX + file.getPath(), Flight::new, flights::add);
+
+        assertEquals(1000, flights.size());
+        assertEquals(1000, report.getLoaded());
+        assertFalse(report.hasErrors());
+    }
+
+    @Test
+    public void testLoadInvalidRecordsReported() throws IOException {
+        File file = folder.newFile("flights.csv");
+        Files.write(file.toPath(), "10:00,MUC,TXL,01:00\n10:00,MUC\n12:00,TXL,MUC,1:00\n14:00,MUC,TXL,01:00\n".getBytes(Charset.defaultCharset()));
+
+        List<Flight> flights = new ArrayList<>();
+        CsvInputLoader.Report report = CsvInputLoader.load(CsvInputLoader.FILE_PREFIX + file.getPath(), Flight::new, flights::add);
+
+        assertEquals(2, flights.size());
+        assertEquals(2, report.getErrorsCount());
+        assertTrue(report.getErrors().get(0).startsWith("record 2:"));
+        assertTrue(report.getErrors().get(1).startsWith("record 3:"));
+    }
+
+    @Test
+    public void testLoadManyInvalidRecordsCounted() throws IOException {
+        File file = folder.newFile("flights.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write("10:00,MUC\n");
+            }
+        }
+
+        CsvInputLoader.Report report = CsvInputLoader.load(CsvInputLoader.FILE_PREFIX + file.getPath(), Flight::new, flight -> { });
+
+        assertEquals(1000, report.getErrorsCount());
+        assertTrue(report.getErrors().size() < 1000);
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadFileNotExists() throws IOException {
+        CsvInputLoader.load(CsvInputLoader.FILE_PREFIX + new File(folder.getRoot(), "missing.csv").getPath(), Flight::new, flight -> { });
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadResourceNotExists() throws IOException {
+        CsvInputLoader.load("/flights_notexists.csv", Flight::new, flight -> { });
+    }
+}
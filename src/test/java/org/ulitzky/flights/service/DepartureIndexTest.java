@@ -0,0 +1,45 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Test;
+import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DepartureIndexTest {
+
+    private static List<FlightAssignmentResource> buildResources(final int count) {
+        List<FlightAssignmentResource> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new FlightAssignmentResource());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSortedByDepartureStable() {
+        List<FlightAssignmentResource> flights = buildResources(4);
+        DepartureIndex index = new DepartureIndex(Arrays.asList(600, 540, 600, 480), flights);
+
+        assertEquals(Arrays.asList(flights.get(3), flights.get(1), flights.get(0), flights.get(2)), index.getFlights(0, index.size()));
+        assertEquals(480, index.getDepartureTime(0));
+        assertEquals(600, index.getDepartureTime(3));
+    }
+
+    @Test
+    public void testLowerBound() {
+        List<FlightAssignmentResource> flights = buildResources(4);
+        DepartureIndex index = new DepartureIndex(Arrays.asList(480, 540, 600, 600), flights);
+
+        assertEquals(0, index.lowerBound(Integer.MIN_VALUE));
+        assertEquals(0, index.lowerBound(480));
+        assertEquals(1, index.lowerBound(481));
+        assertEquals(2, index.lowerBound(600));
+        assertEquals(4, index.lowerBound(601));
+        assertSame(flights.get(1), index.getFlights(index.lowerBound(500), index.lowerBound(600)).get(0));
+    }
+}
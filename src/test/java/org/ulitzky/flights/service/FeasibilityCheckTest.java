@@ -0,0 +1,95 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FeasibilityCheckTest {
+
+    @Test
+    public void testFeasibleWithMove() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("11:30,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertTrue(isFeasible(flightsList, "737,MUC,FL-0001", "A320,TXL,FL-0002"));
+    }
+
+    @Test
+    public void testMoreDeparturesThanAircrafts() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(isFeasible(flightsList, "737,MUC,FL-0001", "A320,TXL,FL-0002"));
+    }
+
+    @Test
+    public void testMoveCannotBeInTime() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(isFeasible(flightsList, "737,MUC,FL-0001", "A320,TXL,FL-0002"));
+    }
+
+    @Test
+    public void testNoAircraftAtAirport() throws IOException {
+        // The way to LHR is only known from the flight back, it takes 2 hours
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("11:00,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(isFeasible(flightsList, "737,MUC,FL-0001", "A320,MUC,FL-0002"));
+    }
+
+    @Test
+    public void testMovesLowerBound() throws IOException {
+        // Both aircrafts leave TXL in the morning, the HAM departures need one aircraft, moved there
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("08:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("11:00,HAM,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("14:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("14:00,HAM,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("15:00,TXL,HAM,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertEquals(2, calcMovesLowerBound(flightsList, "737,TXL,FL-0001", "737,TXL,FL-0002"));
+    }
+
+    @Test
+    public void testMovesLowerBoundInfeasible() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,HAM,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertEquals(FeasibilityCheck.INFEASIBLE, calcMovesLowerBound(flightsList, "737,MUC,FL-0001"));
+    }
+
+    private static boolean isFeasible(final List<Flight> flightsList, final String... homeBases) throws IOException {
+        return calcMovesLowerBound(flightsList, homeBases) != FeasibilityCheck.INFEASIBLE;
+    }
+
+    private static int calcMovesLowerBound(final List<Flight> flightsList, final String... homeBases) throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        for (String homeBase : homeBases) {
+            homeBaseList.add(new AircraftLocation(CSVParser.parse(homeBase, CSVFormat.DEFAULT).iterator().next()));
+        }
+
+        ScheduleProblem problem = new ScheduleProblem(flightsList);
+        FlightScheduleBuildingService.FlightScheduleState state = new FlightScheduleBuildingService().new FlightScheduleState(problem, homeBaseList);
+        return new FeasibilityCheck(problem).calcMovesLowerBound(state);
+    }
+}
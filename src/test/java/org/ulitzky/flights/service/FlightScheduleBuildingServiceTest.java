@@ -6,18 +6,23 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.ulitzky.flights.model.Aircraft;
 import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
 import org.ulitzky.flights.model.Flight;
 import org.ulitzky.flights.model.FlightAssignment;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by lulitzky on 20.04.18.
@@ -63,6 +68,48 @@ public class FlightScheduleBuildingServiceTest {
         assertEquals(flightsList.size(), schedule.size());
     }
 
+    @Test
+    public void testBuildScheduleStatistics() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,TXL,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        assertTrue(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+
+        SearchStatistics statistics = service.getLastRunStatistics();
+        assertEquals(flightsList.size() + 1, statistics.getNodesExpanded());
+        assertEquals(flightsList.size(), statistics.getMaxDepth());
+        assertTrue(statistics.getMoveBranches() > 0);
+        assertTrue(statistics.getTimeToFirstSolutionMillis() >= 0);
+        assertEquals(1.0, statistics.getBranchingFactor(0), 0);
+    }
+
+    @Test
+    public void testBuildScheduleNoSolutionStatistics() throws IOException {
+        service.setFeasibilityCheck(false);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+
+        SearchStatistics statistics = service.getLastRunStatistics();
+        assertTrue(statistics.getBacktracks() > 0);
+        assertEquals(2, statistics.getMaxDepth());
+        assertEquals(-1, statistics.getTimeToFirstSolutionMillis());
+    }
+
     @Test
     public void testBuildScheduleNoSolution() throws IOException {
         List<Flight> flightsList = new LinkedList<>();
@@ -93,4 +140,581 @@ public class FlightScheduleBuildingServiceTest {
         assertEquals(flightsList.size() + 1, schedule.size()); // The is one not-scheduled aircraft move from TXL to MUC added
     }
 
+    @Test
+    public void testBuildScheduleInParallelValid() throws IOException {
+        service.setParallelism(4);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule =  service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(flightsList.size(), schedule.size());
+    }
+
+    @Test
+    public void testBuildScheduleInParallelNoSolution() throws IOException {
+        service.setParallelism(4);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,HAM,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+    }
+
+    @Test
+    public void testBuildScheduleInParallelNeedMove() throws IOException {
+        service.setParallelism(4);
+        service.setParallelDepth(1);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule =  service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(flightsList.size() + 1, schedule.size());
+    }
+
+    @Test
+    public void testBuildScheduleNoSolutionFailedStatesReused() throws IOException {
+        // The feasibility check would reject the flights before the search
+        service.setFeasibilityCheck(false);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+
+        // Both orders of covering the two identical flights lead to the same dead state, the second one is not explored again
+        assertTrue(service.getFailedStatesCache().getHits() > 0);
+    }
+
+    @Test
+    public void testBuildScheduleInfeasibleRejectedBeforeSearch() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+        assertEquals(0, service.getFailedStatesCache().getMisses());
+    }
+
+    @Test
+    public void testBuildScheduleFailedStatesCacheDisabled() throws IOException {
+        service.setFailedStatesCacheSize(0);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+        assertEquals(0, service.getFailedStatesCache().getHits());
+    }
+
+    @Test(expected = SearchBudgetExhaustedException.class)
+    public void testBuildScheduleNodesBudgetExhausted() throws IOException {
+        service.setMaxNodes(2);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        service.buildFlilghtAssignments(homeBaseList, flightsList);
+    }
+
+    @Test
+    public void testBuildScheduleOwnBudgetNotReported() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        service.buildFlilghtAssignments(homeBaseList, flightsList);
+        SearchStatistics statistics = service.getLastRunStatistics();
+        FailedStatesCache failedStates = service.getFailedStatesCache();
+        try {
+            service.buildFlilghtAssignments(homeBaseList, flightsList, 2, 0);
+            fail("The search must stop at its own node limit, not at the configured one");
+        } catch (SearchBudgetExhaustedException e) {
+            // the statistics of the previous build are still reported
+            assertSame(statistics, service.getLastRunStatistics());
+            assertSame(failedStates, service.getFailedStatesCache());
+        }
+    }
+
+    @Test
+    public void testBuildScheduleDeepSearch() {
+        // One aircraft flying back and forth the whole day, the search goes as deep as the number of the flights
+        Airport muc = new Airport("MUC");
+        Airport txl = new Airport("TXL");
+        int flightsCount = 5000;
+
+        List<Flight> flightsList = new LinkedList<>();
+        for (int i = 0; i < flightsCount; i++) {
+            flightsList.add(new Flight((i % 2 == 0) ? muc : txl, (i % 2 == 0) ? txl : muc, i * 10, 10));
+        }
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(new Aircraft("FL-0001", "737"), muc, AircraftLocation.TIME_NOT_SET));
+
+        List<FlightAssignment> schedule =  service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(flightsCount, schedule.size());
+    }
+
+    @Test
+    public void testBuildScheduleMatchingValid() throws IOException {
+        service.setEngine(SolverEngine.MATCHING);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule =  service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(flightsList.size(), schedule.size());
+    }
+
+    @Test
+    public void testBuildScheduleMatchingNeedMove() throws IOException {
+        service.setEngine(SolverEngine.MATCHING);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule =  service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(flightsList.size() + 1, schedule.size()); // No schedule without moves, the search adds the move from TXL to MUC
+    }
+
+    private static Flight parseFlight(final String record) throws IOException {
+        return new Flight(CSVParser.parse(record, CSVFormat.DEFAULT).iterator().next());
+    }
+
+    /*
+     * FL-0001: MUC - TXL - MUC - TXL, FL-0002: MUC - HAM - MUC
+     */
+    private List<FlightAssignment> buildRepairSchedule(final List<AircraftLocation> homeBaseList) throws IOException {
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+        Aircraft first = homeBaseList.get(0).getAircraft();
+        Aircraft second = homeBaseList.get(1).getAircraft();
+
+        List<FlightAssignment> schedule = new LinkedList<>();
+        schedule.add(new FlightAssignment(parseFlight("08:00,MUC,TXL,01:00"), first));
+        schedule.add(new FlightAssignment(parseFlight("08:00,MUC,HAM,01:00"), second));
+        schedule.add(new FlightAssignment(parseFlight("10:00,TXL,MUC,01:00"), first));
+        schedule.add(new FlightAssignment(parseFlight("11:00,HAM,MUC,01:00"), second));
+        schedule.add(new FlightAssignment(parseFlight("12:00,MUC,TXL,01:00"), first));
+        return schedule;
+    }
+
+    @Test
+    public void testRepairCancelFlight() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        List<FlightAssignment> schedule = buildRepairSchedule(homeBaseList);
+
+        List<FlightAssignment> repaired = service.repairFlightAssignments(homeBaseList, schedule, Collections.singletonList(schedule.get(4).getFlight()),
+                                                                          Collections.emptyList()).get();
+
+        assertEquals(schedule.subList(0, 4), repaired);
+    }
+
+    @Test
+    public void testRepairAddFlight() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        List<FlightAssignment> schedule = buildRepairSchedule(homeBaseList);
+        Flight added = parseFlight("14:00,TXL,MUC,01:00");
+
+        List<FlightAssignment> repaired = service.repairFlightAssignments(homeBaseList, schedule, Collections.emptyList(),
+                                                                          Collections.singletonList(added)).get();
+
+        assertEquals(6, repaired.size());
+        assertEquals(schedule, repaired.subList(0, 5));
+        assertSame(added, repaired.get(5).getFlight());
+        assertEquals("FL-0001", repaired.get(5).getAircraft().getRegistration());
+        // Only the aircraft at TXL was searched again
+        assertEquals(1, service.getLastRunStatistics().getTargetDepth());
+    }
+
+    @Test
+    public void testRepairRetimeFlightEscalated() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        List<FlightAssignment> schedule = buildRepairSchedule(homeBaseList);
+        Flight retimed = parseFlight("11:30,TXL,MUC,01:00");
+
+        // FL-0001 is back in MUC too late for its 12:00 flight, FL-0002 takes it over
+        List<FlightAssignment> repaired = service.repairFlightAssignments(homeBaseList, schedule, Collections.singletonList(schedule.get(2).getFlight()),
+                                                                          Collections.singletonList(retimed)).get();
+
+        assertEquals(5, repaired.size());
+        assertSame(schedule.get(0), repaired.get(0));
+        assertSame(schedule.get(1), repaired.get(1));
+        assertEquals("FL-0001", repaired.get(3).getAircraft().getRegistration());
+        assertSame(retimed, repaired.get(3).getFlight());
+        assertEquals("FL-0002", repaired.get(4).getAircraft().getRegistration());
+        assertSame(schedule.get(4).getFlight(), repaired.get(4).getFlight());
+    }
+
+    @Test
+    public void testRepairNotPossible() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        List<FlightAssignment> schedule = buildRepairSchedule(homeBaseList);
+
+        assertFalse(service.repairFlightAssignments(homeBaseList, schedule, Collections.emptyList(),
+                                                    Collections.singletonList(parseFlight("08:30,MUC,TXL,01:00"))).isPresent());
+    }
+
+    @Test
+    public void testRepairMoveThroughKeptFlightAirport() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        List<FlightAssignment> schedule = new LinkedList<>();
+        schedule.add(new FlightAssignment(parseFlight("08:00,MUC,TXL,01:00"), homeBaseList.get(0).getAircraft()));
+        Flight added = parseFlight("14:00,MUC,HAM,01:00");
+
+        // The aircraft is left in TXL, that only the kept flight goes to, and has to move back to MUC for the added flight
+        List<FlightAssignment> repaired = service.repairFlightAssignments(homeBaseList, schedule, Collections.emptyList(),
+                                                                          Collections.singletonList(added)).get();
+
+        assertEquals(3, repaired.size());
+        assertSame(schedule.get(0), repaired.get(0));
+        assertTrue(repaired.get(1).isMove());
+        assertEquals(new Airport("TXL"), repaired.get(1).getFlight().getOrigin());
+        assertEquals(new Airport("MUC"), repaired.get(1).getFlight().getDestination());
+        assertSame(added, repaired.get(2).getFlight());
+    }
+
+    /*
+     * Three days of MUC - TXL - MUC, the aircraft stays overnight in MUC
+     */
+    private List<Flight> buildWeekFlights() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        for (String day : new String[] {"2018-04-20", "2018-04-21", "2018-04-22"}) {
+            flightsList.add(parseFlight(day + " 10:00,MUC,TXL,01:00"));
+            flightsList.add(parseFlight(day + " 18:00,TXL,MUC,01:00"));
+        }
+        return flightsList;
+    }
+
+    @Test
+    public void testBuildScheduleRollingHorizon() throws IOException {
+        service.setHorizonWindowMinutes(24 * 60);
+        List<Flight> flightsList = buildWeekFlights();
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(6, schedule.size());
+        for (int i = 0; i < schedule.size(); i++) {
+            assertSame(flightsList.get(i), schedule.get(i).getFlight());
+        }
+        // The last search run covered only the last day
+        assertEquals(2, service.getLastRunStatistics().getTargetDepth());
+    }
+
+    @Test
+    public void testBuildScheduleRollingHorizonLookahead() throws IOException {
+        service.setHorizonWindowMinutes(24 * 60);
+        service.setHorizonLookaheadMinutes(12 * 60);
+        List<Flight> flightsList = buildWeekFlights();
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(6, schedule.stream().filter(assignment -> !assignment.isMove()).count());
+    }
+
+    @Test
+    public void testBuildScheduleRollingHorizonWindowFails() throws IOException {
+        service.setHorizonWindowMinutes(24 * 60);
+        List<Flight> flightsList = buildWeekFlights();
+        flightsList.add(parseFlight("2018-04-21 10:30,MUC,HAM,01:00"));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+    }
+
+    @Test
+    public void testBuildScheduleRollingHorizonMoveThroughOtherWindowAirport() throws IOException {
+        service.setHorizonWindowMinutes(24 * 60);
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(parseFlight("2018-04-20 10:00,MUC,HAM,01:00"));
+        flightsList.add(parseFlight("2018-04-21 10:00,MUC,TXL,01:00"));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        // The second day starts in HAM, that only the flight of the first day goes to
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, flightsList).get();
+
+        assertEquals(3, schedule.size());
+        assertTrue(schedule.get(1).isMove());
+        assertEquals(new Airport("HAM"), schedule.get(1).getFlight().getOrigin());
+        assertSame(flightsList.get(1), schedule.get(2).getFlight());
+    }
+
+    /*
+     * The first found schedule moves the aircrafts 3 times, the best one 2 times
+     */
+    private List<Flight> buildMovesFlights() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(parseFlight("08:00,TXL,MUC,01:00"));
+        flightsList.add(parseFlight("11:00,HAM,TXL,01:00"));
+        flightsList.add(parseFlight("14:00,MUC,TXL,01:00"));
+        flightsList.add(parseFlight("14:00,HAM,MUC,01:00"));
+        flightsList.add(parseFlight("15:00,TXL,HAM,01:00"));
+        return flightsList;
+    }
+
+    private static long countMoves(final List<FlightAssignment> schedule) {
+        return schedule.stream().filter(FlightAssignment::isMove).count();
+    }
+
+    @Test
+    public void testBuildScheduleMinimizeMoves() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertEquals(3, countMoves(service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get()));
+        assertEquals(1, service.getLastRunStatistics().getOptimalityGap());
+
+        service.setMinimizeMoves(true);
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get();
+
+        assertEquals(2, countMoves(schedule));
+        assertEquals(7, schedule.size());
+        assertEquals(2, service.getLastRunStatistics().getMoves());
+        assertEquals(0, service.getLastRunStatistics().getOptimalityGap());
+    }
+
+    @Test
+    public void testBuildScheduleMinimizeMovesBudgetExhausted() throws IOException {
+        service.setMinimizeMoves(true);
+        service.setMaxNodes(8);
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        // The best schedule found within the budget is returned instead of the failure
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get();
+
+        assertEquals(3, countMoves(schedule));
+        assertEquals(1, service.getLastRunStatistics().getOptimalityGap());
+    }
+
+    @Test
+    public void testBuildScheduleMinimizeMovesInParallel() throws IOException {
+        service.setMinimizeMoves(true);
+        service.setParallelism(4);
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        assertEquals(2, countMoves(service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get()));
+    }
+
+    /*
+     * One aircraft at MUC cannot cover all the flights. The first found schedule covers only MUC-FRA,
+     * the best one covers MUC-TXL and TXL-MUC instead.
+     */
+    private List<Flight> buildPartialFlights() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(parseFlight("08:00,MUC,FRA,01:00"));
+        flightsList.add(parseFlight("09:30,MUC,TXL,01:00"));
+        flightsList.add(parseFlight("11:00,TXL,MUC,01:00"));
+        return flightsList;
+    }
+
+    @Test
+    public void testBuildSchedulePartialCoverage() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        List<Flight> flightsList = buildPartialFlights();
+
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+
+        service.setPartialCoverage(true);
+        List<List<FlightAssignment>> improvedSchedules = new ArrayList<>();
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, flightsList, improvedSchedules::add).get();
+
+        assertEquals(2, schedule.size());
+        assertSame(flightsList.get(1), schedule.get(0).getFlight());
+        assertSame(flightsList.get(2), schedule.get(1).getFlight());
+        assertEquals(1, service.getLastRunStatistics().getUncoveredFlights());
+
+        // The first schedule is published at once and then improved
+        assertEquals(2, improvedSchedules.size());
+        assertEquals(1, improvedSchedules.get(0).size());
+        assertSame(flightsList.get(0), improvedSchedules.get(0).get(0).getFlight());
+        assertEquals(schedule.size(), improvedSchedules.get(1).size());
+    }
+
+    @Test
+    public void testBuildSchedulePartialCoverageBudgetExhausted() throws IOException {
+        service.setPartialCoverage(true);
+        service.setMaxNodes(5);
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        // The first schedule found is used, when the budget does not suffice to improve it
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, buildPartialFlights()).get();
+
+        assertEquals(1, schedule.size());
+        assertEquals(2, service.getLastRunStatistics().getUncoveredFlights());
+    }
+
+    @Test
+    public void testBuildSchedulePartialCoverageComplete() throws IOException {
+        service.setPartialCoverage(true);
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        // The flights, that can be covered, are all covered
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get();
+        assertEquals(5, schedule.size() - countMoves(schedule));
+        assertEquals(0, service.getLastRunStatistics().getUncoveredFlights());
+    }
+
+    @Test
+    public void testRepairScheduleNotPartial() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        List<Flight> flightsList = buildPartialFlights();
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, flightsList.subList(1, 3)).get();
+
+        service.setPartialCoverage(true);
+
+        // The repair does not leave the added flight uncovered
+        assertFalse(service.repairFlightAssignments(homeBaseList, schedule, Collections.emptyList(),
+                                                    Collections.singletonList(flightsList.get(0))).isPresent());
+    }
+
+    /*
+     * FL-0002 is at MUC since the start, FL-0001 lands there at 09:00, both can fly MUC-HAM at 10:00
+     */
+    private List<AircraftLocation> buildSlackHomeBases() throws IOException {
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        return homeBaseList;
+    }
+
+    @Test
+    public void testBuildScheduleAircraftOrdering() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(parseFlight("08:00,TXL,MUC,01:00"));
+        flightsList.add(parseFlight("10:00,MUC,HAM,01:00"));
+
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(buildSlackHomeBases(), flightsList).get();
+        assertEquals("FL-0002", schedule.get(1).getAircraft().getRegistration());
+
+        // The aircraft, that waits less for the flight, is taken
+        service.setAircraftOrdering(AircraftOrdering.LEAST_SLACK);
+        schedule = service.buildFlilghtAssignments(buildSlackHomeBases(), flightsList).get();
+        assertEquals("FL-0001", schedule.get(1).getAircraft().getRegistration());
+    }
+
+    @Test
+    public void testBuildScheduleFlightOrdering() throws IOException {
+        service.setFeasibilityCheck(false);
+        service.setFailedStatesCacheSize(0);
+
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(parseFlight("10:00,MUC,TXL,01:00"));
+        flightsList.add(parseFlight("10:00,HAM,TXL,01:00"));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+
+        // Every aircraft is tried for MUC-TXL, before it turns out, that HAM-TXL cannot be covered
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+        assertEquals(4, service.getLastRunStatistics().getNodesExpanded());
+
+        // The flight without the aircrafts fails at once
+        service.setFlightOrdering(FlightOrdering.MOST_CONSTRAINED);
+        assertFalse(service.buildFlilghtAssignments(homeBaseList, flightsList).isPresent());
+        assertEquals(1, service.getLastRunStatistics().getNodesExpanded());
+    }
+
+    @Test
+    public void testBuildScheduleHistoryOrdering() throws IOException {
+        service.setAircraftOrdering(AircraftOrdering.HISTORY);
+        service.setFlightOrdering(FlightOrdering.MOST_CONSTRAINED);
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule = service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get();
+        assertEquals(5, schedule.size() - countMoves(schedule));
+
+        service.setParallelism(4);
+        schedule = service.buildFlilghtAssignments(homeBaseList, buildMovesFlights()).get();
+        assertEquals(5, schedule.size() - countMoves(schedule));
+    }
 }
@@ -3,7 +3,9 @@ package org.ulitzky.flights.service;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mapstruct.factory.Mappers;
 import org.mockito.InjectMocks;
@@ -14,15 +16,23 @@ import org.ulitzky.flights.api.v1.resource.FlightAssignmentResource;
 import org.ulitzky.flights.api.v1.resource.OperatingInstructionResource;
 import org.ulitzky.flights.model.Aircraft;
 import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
 import org.ulitzky.flights.model.Flight;
 import org.ulitzky.flights.model.FlightAssignment;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -31,6 +41,9 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class FlightsServiceTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @InjectMocks
     private FlightsService service;
 
@@ -49,7 +62,7 @@ public class FlightsServiceTest {
 
         schedule = loadMockSchedule();
 
-        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class))).thenReturn(Optional.of(schedule));
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.of(schedule));
         service.buildFlightSchedule();
     }
 
@@ -79,7 +92,7 @@ public class FlightsServiceTest {
         for (AircraftLocation location : homebase) {
             assertNotNull(location.getAircraft());
             assertNotNull(location.getAirport());
-            assertNull(location.getTime());
+            assertFalse(location.hasTime());
         }
 
         // Check that all the aircraft registrations are unique
@@ -104,6 +117,17 @@ public class FlightsServiceTest {
         List<AircraftLocation> homebase = service.loadHomeBase();
     }
 
+    @Test
+    public void testLoadHomeBaseInvalidRecordsSkipped() throws IOException {
+        service.setSkipInvalidRecords(true);
+        service.setHomebaseFilename("/homebases_invalid.csv");
+
+        List<AircraftLocation> homebase = service.loadHomeBase();
+
+        assertEquals(2, homebase.size());
+        assertEquals("LHR", homebase.get(0).getAirport().getCode());
+    }
+
     @Test
     public void testLoadFlights() throws IOException {
         List<AircraftLocation> homebase = service.loadHomeBase();
@@ -113,7 +137,7 @@ public class FlightsServiceTest {
         for (AircraftLocation location : homebase) {
             assertNotNull(location.getAircraft());
             assertNotNull(location.getAirport());
-            assertNull(location.getTime());
+            assertFalse(location.hasTime());
         }
 
         // Check that all the aircraft registrations are unique
@@ -141,11 +165,124 @@ public class FlightsServiceTest {
 
     @Test(expected = RuntimeException.class)
     public void testBuildFlightScheduleFailure() throws IOException {
-        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class))).thenReturn(Optional.empty());
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.empty());
 
         service.buildFlightSchedule();
     }
 
+    @Test
+    public void testBuildFlightScheduleFailureState() throws IOException {
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.empty());
+
+        try {
+            service.buildFlightSchedule();
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(FlightsService.BuildState.FAILED, service.getBuildState());
+            assertEquals("Cannot build valid schedule", service.getBuildError());
+            // the previous schedule is still served
+            assertTrue(service.isScheduleReady());
+        }
+    }
+
+    @Test(expected = ScheduleNotReadyException.class)
+    public void testGetFlightPlanBeforeBuild() {
+        new FlightsService().getFlightPlan(null);
+    }
+
+    @Test
+    public void testScheduleBuiltInBackground() throws Exception {
+        FlightsService asyncService = new FlightsService();
+        asyncService.setFlightsFilename("/flights.csv");
+        asyncService.setHomebaseFilename("/homebases.csv");
+        asyncService.setDataMapper(mapper);
+        asyncService.setSchedulerBuilder(flightScheduleBuildingService);
+        assertEquals(FlightsService.BuildState.NOT_STARTED, asyncService.getBuildState());
+
+        asyncService.startScheduleBuild();
+        asyncService.getBuildTask().get();
+        asyncService.stopScheduleBuild();
+
+        assertEquals(FlightsService.BuildState.READY, asyncService.getBuildState());
+        assertEquals(2, asyncService.getFlightPlan("MUC").size());
+    }
+
+    @Test
+    public void testScheduleReloadedOnInputChange() throws Exception {
+        File flightsFile = folder.newFile("flights.csv");
+        File homebaseFile = folder.newFile("homebases.csv");
+        Files.write(flightsFile.toPath(), "10:00,MUC,TXL,01:00\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(homebaseFile.toPath(), "737,MUC,FL-0001\n".getBytes(StandardCharsets.UTF_8));
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class)))
+                .thenReturn(Optional.of(schedule), Optional.of(schedule.subList(0, 1)));
+
+        FlightsService watchingService = new FlightsService();
+        watchingService.setFlightsFilename(CsvInputLoader.FILE_PREFIX + flightsFile.getPath());
+        watchingService.setHomebaseFilename(CsvInputLoader.FILE_PREFIX + homebaseFile.getPath());
+        watchingService.setDataMapper(mapper);
+        watchingService.setSchedulerBuilder(flightScheduleBuildingService);
+        watchingService.setWatchQuietPeriodMillis(100);
+        try {
+            watchingService.startScheduleBuild();
+            watchingService.getBuildTask().get();
+            ScheduleReadModel readModel = watchingService.getReadModel();
+
+            Files.write(flightsFile.toPath(), "12:00,MUC,TXL,01:00\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < 100 && watchingService.getReadModel() == readModel; i++) {
+                Thread.sleep(100);
+            }
+
+            assertEquals(1, watchingService.getFlightPlan(null).size());
+            // the readers of the previous snapshot are not affected
+            assertEquals(4, readModel.getFlightPlan().size());
+        } finally {
+            watchingService.stopScheduleBuild();
+        }
+    }
+
+    @Test
+    public void testReloadFlightSchedule() throws Exception {
+        FlightsService asyncService = new FlightsService();
+        asyncService.setFlightsFilename("/flights.csv");
+        asyncService.setHomebaseFilename("/homebases.csv");
+        asyncService.setDataMapper(mapper);
+        asyncService.setSchedulerBuilder(flightScheduleBuildingService);
+
+        asyncService.startScheduleBuild();
+        asyncService.getBuildTask().get();
+        asyncService.reloadFlightSchedule().get();
+        asyncService.stopScheduleBuild();
+
+        verify(flightScheduleBuildingService, times(3)).buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class));
+    }
+
+    @Test
+    public void testScheduleLoadedFromSnapshot() throws Exception {
+        // The snapshot only refers to the flights of the inputs, so the schedule is built of them
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenAnswer(invocation -> {
+            List<AircraftLocation> homeBases = invocation.getArgumentAt(0, List.class);
+            List<Flight> flights = invocation.getArgumentAt(1, List.class);
+            return Optional.of(flights.stream().map(flight -> new FlightAssignment(flight, homeBases.get(0).getAircraft())).collect(Collectors.toList()));
+        });
+        when(flightScheduleBuildingService.getSettingsKey()).thenReturn("settings");
+        service.setSnapshotDirectory(folder.newFolder("snapshots").getPath());
+
+        service.buildFlightSchedule();
+        List<FlightAssignment> built = service.getFlightSchedule();
+        service.buildFlightSchedule();
+
+        verify(flightScheduleBuildingService, times(2)).buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class));
+        assertEquals(built.size(), service.getFlightSchedule().size());
+        assertEquals(built.get(0).getFlight().getDepartureTime(), service.getFlightSchedule().get(0).getFlight().getDepartureTime());
+        assertTrue(service.getUncoveredFlights().isEmpty());
+
+        // The changed solver settings build the schedule again
+        when(flightScheduleBuildingService.getSettingsKey()).thenReturn("other settings");
+        service.buildFlightSchedule();
+
+        verify(flightScheduleBuildingService, times(3)).buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class));
+    }
+
     @Test
     public void testGetOperationPlanValid() {
        List<OperatingInstructionResource> plan =  service.getOperationsPlan("FL-0001");
@@ -154,7 +291,7 @@ public class FlightsServiceTest {
 
     @Test
     public void testGetOperationPlanEmptySchedule() throws IOException {
-        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class))).thenReturn(Optional.of(Collections.emptyList()));
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.of(Collections.emptyList()));
         service.buildFlightSchedule();
 
         assertTrue(service.getOperationsPlan("FL-0001").isEmpty());
@@ -165,6 +302,14 @@ public class FlightsServiceTest {
         assertTrue(service.getOperationsPlan("FL-0004").isEmpty());
     }
 
+    @Test
+    public void testGetRegistrationsOfWholeFleet() {
+        List<String> registrations = service.getReadModel().getRegistrations();
+
+        assertEquals(4, registrations.size());
+        assertTrue(registrations.containsAll(Arrays.asList("FL-0001", "FL-0002", "FL-0004")));
+    }
+
     @Test
     public void testGetFlightPlanForAllValid() {
         List<FlightAssignmentResource> plan =  service.getFlightPlan(null);
@@ -173,7 +318,7 @@ public class FlightsServiceTest {
 
     @Test
     public void testGetFlightPlanForAllEmptySchedule() throws IOException {
-        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class))).thenReturn(Optional.of(Collections.emptyList()));
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.of(Collections.emptyList()));
         service.buildFlightSchedule();
 
         assertTrue(service.getFlightPlan(null).isEmpty());
@@ -189,7 +334,7 @@ public class FlightsServiceTest {
 
     @Test
     public void testGetFlightPlanForAirportEmptySchedule() throws IOException {
-        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class))).thenReturn(Optional.of(Collections.emptyList()));
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenReturn(Optional.of(Collections.emptyList()));
         service.buildFlightSchedule();
 
         assertTrue(service.getFlightPlan("TXL").isEmpty());
@@ -200,5 +345,151 @@ public class FlightsServiceTest {
         assertTrue(service.getFlightPlan("HAM").isEmpty());
     }
 
-}
+    @Test
+    public void testGetFlightPlanForAirportCaseInsensitive() {
+        assertEquals(service.getFlightPlan("MUC"), service.getFlightPlan("muc"));
+        assertEquals(1, service.getFlightPlan("Lhr").size());
+    }
+
+    @Test
+    public void testPlansMappedOnceAndShared() {
+        List<FlightAssignmentResource> plan = service.getFlightPlan("MUC");
+
+        assertSame(plan, service.getFlightPlan("MUC"));
+        assertSame(service.getOperationsPlan("FL-0002"), service.getOperationsPlan("FL-0002"));
+        verify(mapper, times(1)).mapToFlightPlan(any(List.class));
+        verify(mapper, times(1)).mapToOperatingInstructionResources(any(List.class));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFlightPlanImmutable() {
+        service.getFlightPlan(null).clear();
+    }
 
+    @Test
+    public void testReadModelVersionChangesOnRebuild() throws IOException {
+        ScheduleReadModel readModel = service.getReadModel();
+        byte[] response = readModel.getSerializedResponse("flightplan", () -> new byte[1]);
+        assertSame(response, readModel.getSerializedResponse("flightplan", () -> new byte[1]));
+
+        service.buildFlightSchedule();
+
+        assertTrue(service.getReadModel().getVersion() > readModel.getVersion());
+        assertNotSame(response, service.getReadModel().getSerializedResponse("flightplan", () -> new byte[1]));
+    }
+
+    @Test
+    public void testGetOperationPlanInScheduleOrder() {
+        List<OperatingInstructionResource> plan = service.getOperationsPlan("FL-0001");
+
+        assertEquals(Arrays.asList("MUC", "TXL", "MUC"), plan.stream().map(OperatingInstructionResource::getOrigin).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCancelFlight() {
+        ScheduleReadModel readModel = service.getReadModel();
+        Flight cancelled = schedule.get(2).getFlight();
+        when(flightScheduleBuildingService.repairFlightAssignments(any(List.class), eq(readModel.getFlightAssignments()),
+                                                                   eq(Collections.singletonList(cancelled)), eq(Collections.emptyList())))
+                .thenReturn(Optional.of(schedule.subList(0, 2)));
+
+        long version = service.cancelFlight("muc", "TXL", cancelled.getDepartureTime());
+
+        assertEquals(version, service.getReadModel().getVersion());
+        assertEquals(2, service.getOperationsPlan("FL-0001").size());
+    }
+
+    @Test(expected = FlightNotFoundException.class)
+    public void testCancelFlightNotFound() {
+        service.cancelFlight("MUC", "TXL", schedule.get(1).getFlight().getDepartureTime());
+    }
+
+    @Test
+    public void testRetimeFlightNotRepaired() {
+        ScheduleReadModel readModel = service.getReadModel();
+        when(flightScheduleBuildingService.repairFlightAssignments(any(List.class), any(List.class), any(List.class), any(List.class)))
+                .thenReturn(Optional.empty());
+
+        try {
+            service.retimeFlight("LHR", "HAM", schedule.get(3).getFlight().getDepartureTime(), schedule.get(3).getFlight().getDepartureTime() + 30);
+            fail();
+        } catch (ScheduleRepairException e) {
+            assertSame(readModel, service.getReadModel());
+        }
+    }
+
+    @Test
+    public void testAddFlight() {
+        Flight added = new Flight(new Airport("TXL"), new Airport("MUC"), schedule.get(2).getFlight().getScheduledArrivalTime(), 60);
+        List<FlightAssignment> repaired = new ArrayList<>(schedule);
+        repaired.add(new FlightAssignment(added, schedule.get(2).getAircraft()));
+        when(flightScheduleBuildingService.repairFlightAssignments(any(List.class), any(List.class), eq(Collections.emptyList()),
+                                                                   eq(Collections.singletonList(added))))
+                .thenReturn(Optional.of(repaired));
+
+        service.addFlight(added);
+
+        assertEquals(4, service.getOperationsPlan("FL-0001").size());
+    }
+
+    @Test
+    public void testBuildPartialFlightSchedule() throws IOException {
+        int flightsCount = service.loadFlightSchedule().size();
+        List<Integer> servedFlightPlanSizes = new ArrayList<>();
+        when(flightScheduleBuildingService.buildFlilghtAssignments(any(List.class), any(List.class), any(Consumer.class))).thenAnswer(invocation -> {
+            List<Flight> flights = (List<Flight>) invocation.getArguments()[1];
+            Consumer<List<FlightAssignment>> improvedSchedules = (Consumer<List<FlightAssignment>>) invocation.getArguments()[2];
+            Aircraft aircraft = new Aircraft("FL-0001", "737");
+
+            improvedSchedules.accept(Collections.singletonList(new FlightAssignment(flights.get(0), aircraft)));
+            servedFlightPlanSizes.add(service.getFlightPlan(null).size());
+            return Optional.of(Arrays.asList(new FlightAssignment(flights.get(0), aircraft), new FlightAssignment(flights.get(1), aircraft)));
+        });
+
+        service.buildFlightSchedule();
+
+        // The first partial schedule is served, while the search goes on
+        assertEquals(Collections.singletonList(1), servedFlightPlanSizes);
+        assertEquals(FlightsService.BuildState.READY, service.getBuildState());
+        assertEquals(2, service.getFlightPlan(null).size());
+        assertEquals(flightsCount - 2, service.getUncoveredFlights().size());
+        assertNull(service.getUncoveredFlights().get(0).getEquipment());
+    }
+
+    @Test
+    public void testGetFlightPlanTimeRange() {
+        ScheduleReadModel readModel = service.getReadModel();
+
+        FlightPlanPage page = readModel.getFlightPlanPage(null, Flight.parseDepartureTime("10:00"), Flight.parseDepartureTime("14:00"), null, 10);
+        assertEquals(3, page.getFlights().size());
+        assertEquals("TXL", page.getFlights().get(2).getOrigin());
+        assertNull(page.getNextCursor());
+
+        page = readModel.getFlightPlanPage("muc", Flight.parseDepartureTime("11:00"), Integer.MAX_VALUE, null, 10);
+        assertEquals(1, page.getFlights().size());
+        assertEquals(mapper.mapToDate(Flight.parseDepartureTime("14:00")), page.getFlights().get(0).getDeparture());
+
+        assertTrue(readModel.getFlightPlanPage("HAM", Integer.MIN_VALUE, Integer.MAX_VALUE, null, 10).getFlights().isEmpty());
+    }
+
+    @Test
+    public void testGetFlightPlanPages() {
+        ScheduleReadModel readModel = service.getReadModel();
+
+        // The page ends between the two flights departing at 10:00
+        FlightPlanPage page = readModel.getFlightPlanPage(null, Integer.MIN_VALUE, Integer.MAX_VALUE, null, 1);
+        assertEquals("MUC", page.getFlights().get(0).getOrigin());
+
+        List<String> origins = new ArrayList<>();
+        while (page.getNextCursor() != null) {
+            page = readModel.getFlightPlanPage(null, Integer.MIN_VALUE, Integer.MAX_VALUE, page.getNextCursor(), 2);
+            page.getFlights().forEach(flight -> origins.add(flight.getOrigin()));
+        }
+        assertEquals(Arrays.asList("LHR", "TXL", "MUC"), origins);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetFlightPlanInvalidCursor() {
+        service.getReadModel().getFlightPlanPage(null, Integer.MIN_VALUE, Integer.MAX_VALUE, "bm90IGEgY3Vyc29y", 10);
+    }
+}
@@ -0,0 +1,60 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InputFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChangeReportedOnceWhenQuiet() throws Exception {
+        File file = folder.newFile("flights.csv");
+        AtomicInteger changes = new AtomicInteger();
+        CountDownLatch changed = new CountDownLatch(1);
+
+        try (InputFileWatcher watcher = new InputFileWatcher(Collections.singletonList(file.toPath()), 200, () -> {
+            changes.incrementAndGet();
+            changed.countDown();
+        })) {
+            for (int i = 0; i < 3; i++) {
+                Files.write(file.toPath(), ("10:00,MUC,TXL,01:00\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertTrue(changed.await(10, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            assertEquals(1, changes.get());
+        }
+    }
+
+    @Test
+    public void testOtherFilesIgnored() throws Exception {
+        File file = folder.newFile("flights.csv");
+        CountDownLatch changed = new CountDownLatch(1);
+
+        try (InputFileWatcher watcher = new InputFileWatcher(Collections.singletonList(file.toPath()), 100, changed::countDown)) {
+            Files.write(folder.newFile("other.csv").toPath(), "other".getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(!changed.await(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDirectoryNotExists() throws IOException {
+        new InputFileWatcher(Collections.singletonList(new File(folder.getRoot(), "missing/flights.csv").toPath()), 100, () -> { });
+    }
+}
@@ -0,0 +1,152 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+import org.ulitzky.flights.model.Aircraft;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MatchingScheduleEngineTest {
+
+    @Test
+    public void testMatchingValid() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("09:00,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("11:00,MUC,LHR,02:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        List<FlightAssignment> schedule = new MatchingScheduleEngine(new ScheduleProblem(flightsList), homeBaseList).buildFlightAssignments().get();
+
+        assertEquals(flightsList.size(), schedule.size());
+        assertValidRotations(homeBaseList, schedule);
+    }
+
+    @Test
+    public void testMatchingNeedMove() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("16:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("747-400,LHR,FL-0003", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(new MatchingScheduleEngine(new ScheduleProblem(flightsList), homeBaseList).buildFlightAssignments().isPresent());
+    }
+
+    @Test
+    public void testMatchingNoAircrafts() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        assertFalse(new MatchingScheduleEngine(new ScheduleProblem(flightsList), Collections.emptyList()).buildFlightAssignments().isPresent());
+    }
+
+    @Test
+    public void testMatchingLongChainsNeedAugmenting() {
+        // The greedy choice of the first aircraft for the first flight is wrong, the matching has to reroute the chains
+        Airport a = new Airport("AAA");
+        Airport b = new Airport("BBB");
+        Airport c = new Airport("CCC");
+
+        List<Flight> flightsList = new LinkedList<>();
+        int chainLength = 500;
+        for (int i = 0; i < chainLength; i++) {
+            flightsList.add(new Flight(a, b, i * 100, 10));
+            flightsList.add(new Flight(b, a, i * 100 + 20, 10));
+        }
+        flightsList.add(new Flight(b, c, chainLength * 100, 10));
+        flightsList.add(new Flight(a, c, chainLength * 100, 10));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(new Aircraft("FL-0001", "737"), a, AircraftLocation.TIME_NOT_SET));
+        homeBaseList.add(new AircraftLocation(new Aircraft("FL-0002", "737"), b, AircraftLocation.TIME_NOT_SET));
+
+        List<FlightAssignment> schedule = new MatchingScheduleEngine(new ScheduleProblem(flightsList), homeBaseList).buildFlightAssignments().get();
+
+        assertEquals(flightsList.size(), schedule.size());
+        assertValidRotations(homeBaseList, schedule);
+    }
+
+    @Test
+    public void testRelaxedMovesCanCover() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("11:30,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        ScheduleProblem problem = new ScheduleProblem(flightsList);
+        assertFalse(new MatchingScheduleEngine(problem, homeBaseList).canCoverAllFlights());
+        assertTrue(new MatchingScheduleEngine(problem, homeBaseList, true).canCoverAllFlights());
+    }
+
+    @Test
+    public void testRelaxedMovesTooLate() throws IOException {
+        // The aircraft from TXL would be in MUC at 11:00 at the earliest, both flights from MUC depart before
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("A320,TXL,FL-0002", CSVFormat.DEFAULT).iterator().next()));
+
+        ScheduleProblem problem = new ScheduleProblem(flightsList);
+        List<AircraftLocation> readyAtFirstDeparture = new LinkedList<>();
+        homeBaseList.forEach(l -> readyAtFirstDeparture.add(new AircraftLocation(l.getAircraft(), l.getAirport(), problem.getDepartureTime(0))));
+        assertFalse(new MatchingScheduleEngine(problem, readyAtFirstDeparture, true).canCoverAllFlights());
+    }
+
+    @Test
+    public void testRelaxedMovesEdgesLimit() throws IOException {
+        // The aircraft cannot fly both flights, but the graph of 2 edges is over the limit and is not checked
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("10:30,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        ScheduleProblem problem = new ScheduleProblem(flightsList);
+        assertFalse(new MatchingScheduleEngine(problem, homeBaseList, true).canCoverAllFlights());
+        assertTrue(new MatchingScheduleEngine(problem, homeBaseList, true, 1).canCoverAllFlights());
+    }
+
+    /*
+     * Every aircraft starts at its home base, every its next flight departs from the airport the previous one arrived to, after the arrival
+     */
+    private static void assertValidRotations(final List<AircraftLocation> homeBaseList, final List<FlightAssignment> schedule) {
+        Map<Aircraft, Airport> airports = new HashMap<>();
+        Map<Aircraft, Integer> times = new HashMap<>();
+        homeBaseList.forEach(l -> airports.put(l.getAircraft(), l.getAirport()));
+
+        for (FlightAssignment assignment : schedule) {
+            Flight flight = assignment.getFlight();
+            assertEquals(airports.get(assignment.getAircraft()), flight.getOrigin());
+            assertTrue(times.getOrDefault(assignment.getAircraft(), Integer.MIN_VALUE) <= flight.getDepartureTime());
+
+            airports.put(assignment.getAircraft(), flight.getDestination());
+            times.put(assignment.getAircraft(), flight.getScheduledArrivalTime());
+        }
+    }
+}
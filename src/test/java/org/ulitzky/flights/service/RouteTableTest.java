@@ -0,0 +1,52 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class RouteTableTest {
+
+    @Test
+    public void testFlightDurationBothDirections() throws IOException {
+        RouteTable routes = new RouteTable(new Flight[] {
+                new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()),
+                new Flight(CSVParser.parse("09:00,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next())
+        });
+
+        assertEquals(3, routes.getAirportsCount());
+        assertEquals(60, routes.getFlightDuration(new Airport("MUC"), new Airport("TXL")));
+        // No flight TXL to MUC, the opposite direction is used
+        assertEquals(60, routes.getFlightDuration(new Airport("TXL"), new Airport("MUC")));
+        assertEquals(120, routes.getFlightDuration(new Airport("MUC"), new Airport("LHR")));
+    }
+
+    @Test
+    public void testFlightDurationLongestFlight() throws IOException {
+        RouteTable routes = new RouteTable(new Flight[] {
+                new Flight(CSVParser.parse("10:00,MUC,LHR,02:00", CSVFormat.DEFAULT).iterator().next()),
+                new Flight(CSVParser.parse("18:00,MUC,LHR,02:30", CSVFormat.DEFAULT).iterator().next()),
+                new Flight(CSVParser.parse("20:30,LHR,MUC,02:00", CSVFormat.DEFAULT).iterator().next())
+        });
+
+        assertEquals(150, routes.getFlightDuration(new Airport("MUC"), new Airport("LHR")));
+        assertEquals(120, routes.getFlightDuration(new Airport("LHR"), new Airport("MUC")));
+    }
+
+    @Test
+    public void testFlightDurationNoRoute() throws IOException {
+        RouteTable routes = new RouteTable(new Flight[] {
+                new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()),
+                new Flight(CSVParser.parse("09:00,LHR,HAM,02:30", CSVFormat.DEFAULT).iterator().next())
+        });
+
+        assertEquals(RouteTable.NO_ROUTE, routes.getFlightDuration(new Airport("MUC"), new Airport("HAM")));
+        assertEquals(RouteTable.NO_ROUTE, routes.getFlightDuration(new Airport("MUC"), new Airport("FRA")));
+        assertEquals(RouteTable.UNKNOWN_AIRPORT, routes.getAirportId(new Airport("FRA")));
+    }
+}
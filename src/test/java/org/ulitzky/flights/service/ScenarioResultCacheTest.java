@@ -0,0 +1,72 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ScenarioResultCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        ScenarioResultCache cache = new ScenarioResultCache(2);
+        for (String key : new String[] {"a", "b"}) {
+            assertTrue(cache.lookup(key, true).get().isOwner());
+            cache.complete(key, Optional.empty());
+        }
+        assertFalse(cache.lookup("a", true).get().isOwner());
+
+        assertTrue(cache.lookup("c", true).get().isOwner());
+        cache.complete("c", Optional.empty());
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(cache.lookup("a", true).get().isOwner());
+        assertTrue(cache.lookup("b", true).get().isOwner());
+    }
+
+    @Test
+    public void testOnlyCachedResultWhenNotAdmitted() {
+        ScenarioResultCache cache = new ScenarioResultCache(2);
+        cache.lookup("a", true);
+        cache.complete("a", Optional.empty());
+        cache.lookup("b", true);
+
+        assertTrue(cache.lookup("a", false).isPresent());
+        assertFalse(cache.lookup("b", false).isPresent());
+        assertFalse(cache.lookup("c", false).isPresent());
+        assertEquals(0, cache.getCoalesced());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testJoinedSolveStarted() {
+        ScenarioResultCache cache = new ScenarioResultCache(2);
+        cache.lookup("a", true).get();
+        CompletableFuture<Long> joined = cache.lookup("a", true).get().getStarted();
+        assertFalse(joined.isDone());
+
+        cache.start("a", 5);
+
+        assertEquals(5L, joined.join().longValue());
+        cache.complete("a", Optional.empty());
+        assertEquals(0L, cache.lookup("a", true).get().getStarted().join().longValue());
+    }
+
+    @Test
+    public void testFailedSolveNotCached() {
+        ScenarioResultCache cache = new ScenarioResultCache(2);
+        ScenarioResultCache.Lookup owner = cache.lookup("a", true).get();
+        CompletableFuture<Optional<ScheduleReadModel>> joined = cache.lookup("a", true).get().getResult();
+
+        cache.fail("a", new IllegalStateException("failed"));
+
+        assertTrue(owner.getResult().isCompletedExceptionally());
+        assertTrue(joined.isCompletedExceptionally());
+        assertTrue(cache.lookup("a", true).get().isOwner());
+        assertEquals(1, cache.getCoalesced());
+        assertEquals(2, cache.getMisses());
+    }
+}
@@ -0,0 +1,308 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ScenarioServiceTest {
+
+    private ScenarioService scenarioService;
+
+    private FlightScheduleBuildingService schedulerBuilder = new FlightScheduleBuildingService();
+
+    private List<AircraftLocation> homeBases = new ArrayList<>();
+
+    private List<Flight> flights = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        homeBases.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+        flights.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flights.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        scenarioService = new ScenarioService();
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.setDataMapper(Mappers.getMapper(FlightsDataMapper.class));
+        scenarioService.setWorkers(1);
+        scenarioService.setQueueCapacity(1);
+    }
+
+    @After
+    public void tearDown() {
+        scenarioService.stop();
+    }
+
+    private static ScenarioJob awaitFinished(final ScenarioJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && (job.getStatus() == ScenarioJob.Status.QUEUED || job.getStatus() == ScenarioJob.Status.RUNNING); i++) {
+            Thread.sleep(50);
+        }
+        return job;
+    }
+
+    @Test
+    public void testScenarioSolved() throws InterruptedException {
+        scenarioService.start();
+
+        ScenarioJob job = awaitFinished(scenarioService.submit(homeBases, flights));
+
+        assertSame(job, scenarioService.getJob(job.getId()));
+        assertEquals(ScenarioJob.Status.SOLVED, job.getStatus());
+        assertEquals(2, job.getSchedule().getFlightPlan().size());
+        assertTrue(job.getSolveMillis() >= 0);
+        assertEquals(1, scenarioService.getSolvedCount());
+    }
+
+    @Test
+    public void testScenarioWithoutScheduleFailed() throws InterruptedException {
+        scenarioService.start();
+
+        ScenarioJob job = awaitFinished(scenarioService.submit(homeBases, flights.subList(1, 2)));
+
+        assertEquals(ScenarioJob.Status.FAILED, job.getStatus());
+        assertNotNull(job.getError());
+        assertEquals(1, scenarioService.getFailedCount());
+    }
+
+    @Test
+    public void testScenarioNotReportedAsLatestRun() throws InterruptedException {
+        SearchStatistics statistics = schedulerBuilder.getLastRunStatistics();
+        scenarioService.start();
+
+        assertEquals(ScenarioJob.Status.SOLVED, awaitFinished(scenarioService.submit(homeBases, flights)).getStatus());
+
+        assertSame(statistics, schedulerBuilder.getLastRunStatistics());
+    }
+
+    @Test
+    public void testScenarioTimedOut() throws InterruptedException {
+        FlightScheduleBuildingService schedulerBuilder = mock(FlightScheduleBuildingService.class);
+        when(schedulerBuilder.buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong()))
+                .thenThrow(new SearchBudgetExhaustedException(5, 100));
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.setMaxNodes(5);
+        scenarioService.setTimeLimitMillis(100);
+        scenarioService.start();
+
+        ScenarioJob job = awaitFinished(scenarioService.submit(homeBases, flights));
+
+        assertEquals(ScenarioJob.Status.TIMED_OUT, job.getStatus());
+        assertNotNull(job.getError());
+        assertTrue(job.getSolveMillis() >= 0);
+        assertEquals(1, scenarioService.getTimedOutCount());
+        assertEquals(0, scenarioService.getFailedCount());
+        verify(schedulerBuilder).buildFlilghtAssignments(any(List.class), any(List.class), eq(5L), eq(100L));
+    }
+
+    @Test
+    public void testScenarioRejectedWhenQueueFull() throws InterruptedException {
+        CountDownLatch solving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FlightScheduleBuildingService schedulerBuilder = mock(FlightScheduleBuildingService.class);
+        when(schedulerBuilder.buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            solving.countDown();
+            release.await();
+            return Optional.empty();
+        });
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.start();
+
+        scenarioService.submit(homeBases, flights);
+        solving.await();
+        ScenarioJob queued = scenarioService.submit(homeBases, flights.subList(0, 1));
+        try {
+            scenarioService.submit(homeBases, flights.subList(1, 2));
+            fail("The scenario over the queue capacity must be rejected");
+        } catch (ScenarioRejectedException e) {
+            assertFalse(e.isShuttingDown());
+        }
+
+        ScenarioMetrics scenarioMetrics = new ScenarioMetrics();
+        scenarioMetrics.setScenarioService(scenarioService);
+        Map<String, Number> metrics = scenarioMetrics.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+        assertEquals(1, metrics.get("scenarios.queue-depth"));
+        assertEquals(1, metrics.get("scenarios.active"));
+        assertEquals(2L, metrics.get("scenarios.submitted"));
+        assertEquals(1L, metrics.get("scenarios.rejected"));
+
+        release.countDown();
+        assertEquals(ScenarioJob.Status.FAILED, awaitFinished(queued).getStatus());
+    }
+
+    @Test
+    public void testEqualScenarioCached() throws Exception {
+        scenarioService.start();
+        ScenarioJob solved = awaitFinished(scenarioService.submit(homeBases, flights));
+
+        // The same scenario in the other order and case of the airport codes
+        List<Flight> equalFlights = new ArrayList<>();
+        equalFlights.add(new Flight(CSVParser.parse("12:00,txl,muc,01:00", CSVFormat.DEFAULT).iterator().next()));
+        equalFlights.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        ScenarioJob cached = scenarioService.submit(homeBases, equalFlights);
+
+        assertEquals(ScenarioJob.Status.SOLVED, cached.getStatus());
+        assertSame(solved.getSchedule(), cached.getSchedule());
+        assertEquals(1, scenarioService.getSolveCount());
+        assertEquals(1, scenarioService.getResultCache().getHits());
+        assertEquals(0.5, scenarioService.getResultCache().getHitRate(), 0);
+    }
+
+    @Test
+    public void testEqualScenariosCoalesced() throws Exception {
+        CountDownLatch solving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FlightScheduleBuildingService schedulerBuilder = mock(FlightScheduleBuildingService.class);
+        when(schedulerBuilder.buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            solving.countDown();
+            release.await();
+            return Optional.of(Collections.emptyList());
+        });
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.setCacheSize(0);
+        scenarioService.setQueueCapacity(2);
+        scenarioService.start();
+
+        ScenarioJob first = scenarioService.submit(homeBases, flights);
+        solving.await();
+        // Not solved again, but waiting in the queue for the first one
+        ScenarioJob second = scenarioService.submit(homeBases, flights);
+        ScenarioJob third = scenarioService.submit(homeBases, flights);
+        assertEquals(2, scenarioService.getJoinedCount());
+        assertEquals(0, scenarioService.getQueueDepth());
+        try {
+            scenarioService.submit(homeBases, flights);
+            fail("The scenario over the queue capacity must be rejected, though it would join the running solve");
+        } catch (ScenarioRejectedException e) {
+            assertFalse(e.isShuttingDown());
+        }
+        release.countDown();
+
+        assertEquals(ScenarioJob.Status.SOLVED, awaitFinished(first).getStatus());
+        assertSame(first.getSchedule(), awaitFinished(second).getSchedule());
+        assertSame(first.getSchedule(), awaitFinished(third).getSchedule());
+        verify(schedulerBuilder, times(1)).buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong());
+        assertEquals(2, scenarioService.getResultCache().getCoalesced());
+        assertEquals(0, scenarioService.getResultCache().getSize());
+        assertEquals(0, scenarioService.getJoinedCount());
+        assertEquals(1, scenarioService.getRejectedCount());
+    }
+
+    @Test
+    public void testJoinedScenarioQueuedUntilSolveStarts() throws Exception {
+        CountDownLatch solving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FlightScheduleBuildingService schedulerBuilder = mock(FlightScheduleBuildingService.class);
+        when(schedulerBuilder.buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            solving.countDown();
+            release.await();
+            return Optional.of(Collections.emptyList());
+        });
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.setQueueCapacity(2);
+        scenarioService.start();
+
+        scenarioService.submit(homeBases, flights);
+        solving.await();
+        ScenarioJob queued = scenarioService.submit(homeBases, flights.subList(0, 1));
+        ScenarioJob joined = scenarioService.submit(homeBases, flights.subList(0, 1));
+
+        // The equal scenario waits in the queue, so the joined one does too
+        assertEquals(ScenarioJob.Status.QUEUED, joined.getStatus());
+        release.countDown();
+        assertEquals(ScenarioJob.Status.SOLVED, awaitFinished(queued).getStatus());
+        assertEquals(ScenarioJob.Status.SOLVED, awaitFinished(joined).getStatus());
+        assertTrue(joined.getWaitMillis(System.currentTimeMillis()) >= 0);
+        assertTrue(joined.getSolveMillis() >= 0);
+    }
+
+    @Test
+    public void testConcurrentEqualScenariosNotOverCapacity() throws Exception {
+        CountDownLatch solving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FlightScheduleBuildingService schedulerBuilder = mock(FlightScheduleBuildingService.class);
+        when(schedulerBuilder.buildFlilghtAssignments(any(List.class), any(List.class), anyLong(), anyLong())).thenAnswer(invocation -> {
+            solving.countDown();
+            release.await();
+            return Optional.of(Collections.emptyList());
+        });
+        scenarioService.setSchedulerBuilder(schedulerBuilder);
+        scenarioService.setCacheSize(0);
+        scenarioService.start();
+        scenarioService.submit(homeBases, flights);
+        solving.await();
+
+        int submits = 16;
+        ExecutorService clients = Executors.newFixedThreadPool(submits);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        for (int i = 0; i < submits; i++) {
+            clients.execute(() -> {
+                try {
+                    go.await();
+                    scenarioService.submit(homeBases, flights);
+                    accepted.incrementAndGet();
+                } catch (ScenarioRejectedException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        go.countDown();
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        // The queue has the room for one scenario only, the equal ones cannot join the running solve over the capacity
+        assertEquals(1, accepted.get());
+        assertEquals(submits - 1, rejected.get());
+        assertEquals(submits - 1, scenarioService.getRejectedCount());
+    }
+
+    @Test(expected = ScenarioRejectedException.class)
+    public void testScenarioRejectedWhenStopped() {
+        scenarioService.start();
+        scenarioService.stop();
+
+        scenarioService.submit(homeBases, flights);
+    }
+
+    @Test(expected = ScenarioNotFoundException.class)
+    public void testOldestFinishedScenarioDropped() throws InterruptedException {
+        scenarioService.setRetainedJobs(1);
+        scenarioService.start();
+
+        ScenarioJob first = awaitFinished(scenarioService.submit(homeBases, flights));
+        awaitFinished(scenarioService.submit(homeBases, flights));
+
+        scenarioService.getJob(first.getId());
+    }
+}
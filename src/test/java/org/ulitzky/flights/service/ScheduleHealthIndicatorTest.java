@@ -0,0 +1,89 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScheduleHealthIndicatorTest {
+
+    @InjectMocks
+    private ScheduleHealthIndicator healthIndicator;
+
+    @Mock
+    private FlightsService flightsService;
+
+    @Mock
+    private FlightScheduleBuildingService schedulerBuilder;
+
+    @Mock
+    private ScheduleReadModel readModel;
+
+    @Before
+    public void setUp() {
+        when(schedulerBuilder.getLastRunStatistics()).thenReturn(new SearchStatistics(4));
+    }
+
+    @Test
+    public void testHealthBuilding() {
+        when(flightsService.getBuildState()).thenReturn(FlightsService.BuildState.BUILDING);
+        SearchStatistics statistics = new SearchStatistics(4);
+        statistics.countNode(1);
+        when(schedulerBuilder.getLastRunStatistics()).thenReturn(statistics);
+
+        Health health = healthIndicator.health();
+
+        assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        assertEquals(0.25, health.getDetails().get("progress"));
+        assertEquals(1L, health.getDetails().get("nodesExpanded"));
+    }
+
+    @Test
+    public void testHealthReady() {
+        when(flightsService.getBuildState()).thenReturn(FlightsService.BuildState.READY);
+        when(flightsService.isScheduleReady()).thenReturn(true);
+        when(flightsService.getReadModel()).thenReturn(readModel);
+        when(readModel.getVersion()).thenReturn(42L);
+
+        Health health = healthIndicator.health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(42L, health.getDetails().get("version"));
+    }
+
+    @Test
+    public void testHealthFailed() {
+        when(flightsService.getBuildState()).thenReturn(FlightsService.BuildState.FAILED);
+        when(flightsService.getBuildError()).thenReturn("Cannot build valid schedule");
+
+        Health health = healthIndicator.health();
+
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals("Cannot build valid schedule", health.getDetails().get("error"));
+    }
+
+    @Test
+    public void testHealthPartialSchedule() {
+        when(flightsService.getBuildState()).thenReturn(FlightsService.BuildState.READY);
+        when(flightsService.isScheduleReady()).thenReturn(true);
+        when(flightsService.getReadModel()).thenReturn(readModel);
+        when(readModel.getUncoveredFlights()).thenReturn(Collections.singletonList(new Flight(new Airport("MUC"), new Airport("TXL"), 600, 60)));
+
+        Health health = healthIndicator.health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(1, health.getDetails().get("uncoveredFlights"));
+    }
+}
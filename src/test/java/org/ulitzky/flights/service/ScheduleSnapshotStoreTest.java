@@ -0,0 +1,100 @@
+package org.ulitzky.flights.service;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ulitzky.flights.model.Aircraft;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Airport;
+import org.ulitzky.flights.model.Flight;
+import org.ulitzky.flights.model.FlightAssignment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class ScheduleSnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<AircraftLocation> homeBases;
+
+    private List<Flight> flights;
+
+    private List<FlightAssignment> schedule;
+
+    private ScheduleSnapshotStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        homeBases = Arrays.asList(new AircraftLocation(new Aircraft("FL-0001", "737"), new Airport("MUC"), AircraftLocation.TIME_NOT_SET),
+                                  new AircraftLocation(new Aircraft("FL-0002", "A320"), new Airport("TXL"), AircraftLocation.TIME_NOT_SET));
+        flights = Arrays.asList(new Flight(new Airport("MUC"), new Airport("TXL"), 600, 60),
+                                new Flight(new Airport("MUC"), new Airport("HAM"), 720, 60));
+        schedule = Arrays.asList(new FlightAssignment(flights.get(0), homeBases.get(0).getAircraft()),
+                                 new FlightAssignment(new Flight(new Airport("TXL"), new Airport("MUC"), 600, 60), homeBases.get(1).getAircraft(), true),
+                                 new FlightAssignment(flights.get(1), homeBases.get(1).getAircraft()));
+        store = new ScheduleSnapshotStore(folder.newFolder("snapshots").toPath());
+    }
+
+    @Test
+    public void testSaveAndLoad() {
+        byte[] hash = ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings");
+        store.save(hash, homeBases, flights, schedule);
+
+        List<FlightAssignment> loaded = store.load(hash, homeBases, flights).get();
+
+        assertEquals(3, loaded.size());
+        // The flights and the aircrafts of the inputs are shared, as by the built schedule
+        assertSame(flights.get(0), loaded.get(0).getFlight());
+        assertSame(homeBases.get(0).getAircraft(), loaded.get(0).getAircraft());
+        assertSame(flights.get(1), loaded.get(2).getFlight());
+
+        FlightAssignment move = loaded.get(1);
+        assertTrue(move.isMove());
+        assertSame(homeBases.get(1).getAircraft(), move.getAircraft());
+        assertEquals(new Airport("TXL"), move.getFlight().getOrigin());
+        assertEquals(new Airport("MUC"), move.getFlight().getDestination());
+        assertEquals(600, move.getFlight().getDepartureTime());
+        assertEquals(60, move.getFlight().getFlightLength());
+    }
+
+    @Test
+    public void testHashDependsOnInputsAndSettings() {
+        byte[] hash = ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings");
+
+        assertArrayEquals(hash, ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings"));
+        assertFalse(Arrays.equals(hash, ScheduleSnapshotStore.hashInputs(homeBases, flights, "other settings")));
+        assertFalse(Arrays.equals(hash, ScheduleSnapshotStore.hashInputs(homeBases, flights.subList(0, 1), "settings")));
+    }
+
+    @Test
+    public void testNotLoadedForOtherInputs() {
+        store.save(ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings"), homeBases, flights, schedule);
+
+        assertFalse(store.load(ScheduleSnapshotStore.hashInputs(homeBases, flights, "other settings"), homeBases, flights).isPresent());
+    }
+
+    @Test
+    public void testNotLoadedWithoutSnapshot() {
+        assertFalse(store.load(ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings"), homeBases, flights).isPresent());
+    }
+
+    @Test
+    public void testTruncatedSnapshotIgnored() throws IOException {
+        byte[] hash = ScheduleSnapshotStore.hashInputs(homeBases, flights, "settings");
+        store.save(hash, homeBases, flights, schedule);
+        byte[] content = Files.readAllBytes(store.getFile());
+        Files.write(store.getFile(), Arrays.copyOf(content, content.length - 3));
+
+        Optional<List<FlightAssignment>> loaded = store.load(hash, homeBases, flights);
+
+        assertFalse(loaded.isPresent());
+    }
+}
@@ -0,0 +1,42 @@
+package org.ulitzky.flights.service;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.ulitzky.flights.model.AircraftLocation;
+import org.ulitzky.flights.model.Flight;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SolverMetricsTest {
+
+    @Test
+    public void testMetricsOfLastRun() throws IOException {
+        List<Flight> flightsList = new LinkedList<>();
+        flightsList.add(new Flight(CSVParser.parse("10:00,MUC,TXL,01:00", CSVFormat.DEFAULT).iterator().next()));
+        flightsList.add(new Flight(CSVParser.parse("12:00,TXL,MUC,01:00", CSVFormat.DEFAULT).iterator().next()));
+
+        List<AircraftLocation> homeBaseList = new LinkedList<>();
+        homeBaseList.add(new AircraftLocation(CSVParser.parse("737,MUC,FL-0001", CSVFormat.DEFAULT).iterator().next()));
+
+        FlightScheduleBuildingService schedulerBuilder = new FlightScheduleBuildingService();
+        schedulerBuilder.buildFlilghtAssignments(homeBaseList, flightsList);
+
+        SolverMetrics solverMetrics = new SolverMetrics();
+        solverMetrics.setSchedulerBuilder(schedulerBuilder);
+        Map<String, Number> metrics = solverMetrics.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+
+        assertEquals(3L, metrics.get("solver.nodes-expanded"));
+        assertEquals(2, metrics.get("solver.max-depth"));
+        assertEquals(1.0, metrics.get("solver.branching-factor.depth.1").doubleValue(), 0);
+        assertTrue(metrics.get("solver.time-to-first-solution-ms").longValue() >= 0);
+    }
+}